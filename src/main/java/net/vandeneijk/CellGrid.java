@@ -0,0 +1,181 @@
+/**
+ * Class that divides the entire picture in a raster of 32x32 cells while the picture is streamed through it row by row. It sums the luminosity of
+ * each raster cell, so a full resolution copy of the picture never has to be kept in memory. The special trick here is that the raster of 32x32 is
+ * actually build from 4 times a raster of 16x16. Each raster of 16x16 starts at a corner of the picture. This way, if the picture can't be exactly
+ * divided by 32 along each axis, the skipped pixels will be in the middle forming a stripe or a cross. Reason for this is that the cells of a
+ * rotated picture cover exactly the same pixels, so the other orientations can be derived by rotating the 32x32 cell values instead of the pixels.
+ *
+ * The raster is always laid out on the original width and height of the picture. When the picture is decoded at a reduced scale, each decoded
+ * pixel stands for a square of scale x scale original pixels and is added to every cell that square overlaps, weighted by the overlap. This keeps
+ * the cells at the same place as in a full resolution decode, no matter how coarse the decoded picture is.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.Arrays;
+
+class CellGrid {
+
+    // Final class variables.
+    static final int CELLS_PER_AXIS = 32;
+    private static final int CELLS_PER_QUADRANT_AXIS = CELLS_PER_AXIS / 2;
+
+    // Variables related to the constructor.
+    private final int mDecodedWidth;
+    private final int mDecodedHeight;
+    private final Segments mColumnSegments;
+    private final Segments mRowSegments;
+    private final long mCellArea;
+
+    // Variables filled by method calls.
+    private final long[] mCellSums = new long[CELLS_PER_AXIS * CELLS_PER_AXIS];
+
+
+
+    /**
+     * Creates a raster for a picture of width x height original pixels that is decoded at 1/scale of its original width and height.
+     *
+     * @param width
+     * @param height
+     * @param scale
+     */
+    CellGrid(int width, int height, int scale) {
+        mDecodedWidth = (width + scale - 1) / scale;
+        mDecodedHeight = (height + scale - 1) / scale;
+        mColumnSegments = new Segments(width, scale);
+        mRowSegments = new Segments(height, scale);
+        mCellArea = (long) (width / CELLS_PER_AXIS) * (height / CELLS_PER_AXIS);
+    }
+
+
+
+    /**
+     * Returns the width the decoded picture must have.
+     *
+     * @return
+     */
+    int getWidth() {
+        return mDecodedWidth;
+    }
+
+    /**
+     * Returns the height the decoded picture must have.
+     *
+     * @return
+     */
+    int getHeight() {
+        return mDecodedHeight;
+    }
+
+    /**
+     * Returns true if decoded row y is part of a cell. Rows in the skipped middle stripe don't have to be read at all.
+     *
+     * @param y
+     * @return
+     */
+    boolean isRowUsed(int y) {
+        return mRowSegments.mStart[y] != mRowSegments.mStart[y + 1];
+    }
+
+    /**
+     * Adds a decoded row of luminosity values to the sums of the cells it crosses. The row array must hold at least getWidth() values.
+     *
+     * @param y
+     * @param luminosityRow
+     */
+    void addRow(int y, int[] luminosityRow) {
+        for (int rowSegment = mRowSegments.mStart[y]; rowSegment < mRowSegments.mStart[y + 1]; rowSegment++) {
+            int cellRowOffset = mRowSegments.mCell[rowSegment] * CELLS_PER_AXIS;
+            long rowWeight = mRowSegments.mWeight[rowSegment];
+
+            for (int x = 0; x < mDecodedWidth; x++) {
+                long value = luminosityRow[x] * rowWeight;
+                for (int columnSegment = mColumnSegments.mStart[x]; columnSegment < mColumnSegments.mStart[x + 1]; columnSegment++) {
+                    mCellSums[cellRowOffset + mColumnSegments.mCell[columnSegment]] += value * mColumnSegments.mWeight[columnSegment];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the average luminosity of each of the 1024 cells, row by row.
+     *
+     * @return
+     */
+    int[] getCellValues() {
+        int[] cellValues = new int[mCellSums.length];
+        for (int i = 0; i < mCellSums.length; i++) cellValues[i] = (int) (mCellSums[i] / mCellArea);
+        return cellValues;
+    }
+
+    /**
+     * Rotates 32x32 cell values by 90 degrees in the same direction as a picture would be rotated and returns the rotated cell values.
+     *
+     * @param cellValues
+     * @return
+     */
+    static int[] rotateCellValues(int[] cellValues) {
+        int[] result = new int[cellValues.length];
+
+        for (int cellRow = 0; cellRow < CELLS_PER_AXIS; cellRow++) {
+            for (int cellColumn = 0; cellColumn < CELLS_PER_AXIS; cellColumn++) {
+                result[cellRow * CELLS_PER_AXIS + cellColumn] = cellValues[(CELLS_PER_AXIS - 1 - cellColumn) * CELLS_PER_AXIS + cellRow];
+            }
+        }
+
+        return result;
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper classes.
+
+    /**
+     * For each decoded pixel position along one axis, the cell positions along that axis it overlaps and how many original pixels overlap each of
+     * them. The segments of decoded position p are found from index mStart[p] up to mStart[p + 1]. Positions in the skipped middle stripe have no
+     * segments.
+     */
+    private static class Segments {
+        private final int[] mStart;
+        private final int[] mCell;
+        private final int[] mWeight;
+
+        private Segments(int pictureLength, int scale) {
+            int cellSize = pictureLength / CELLS_PER_AXIS;
+            int quadrantLength = cellSize * CELLS_PER_QUADRANT_AXIS;
+            int jumpPixels = pictureLength - (cellSize * CELLS_PER_AXIS); // jumpPixels are used to shift the far raster of 16x16 to the corner as described in the JavaDoc comment.
+            int decodedLength = (pictureLength + scale - 1) / scale;
+
+            mStart = new int[decodedLength + 1];
+            int[] cells = new int[pictureLength];
+            int[] weights = new int[pictureLength];
+            int count = 0;
+
+            for (int decoded = 0; decoded < decodedLength; decoded++) {
+                mStart[decoded] = count;
+                int end = Math.min((decoded + 1) * scale, pictureLength);
+                for (int pixel = decoded * scale; pixel < end; pixel++) {
+                    int cell;
+                    if (pixel < quadrantLength) cell = pixel / cellSize;
+                    else if (pixel >= quadrantLength + jumpPixels) cell = (pixel - jumpPixels) / cellSize;
+                    else continue;
+
+                    if (count > mStart[decoded] && cells[count - 1] == cell) weights[count - 1]++;
+                    else {
+                        cells[count] = cell;
+                        weights[count] = 1;
+                        count++;
+                    }
+                }
+            }
+            mStart[decodedLength] = count;
+
+            mCell = Arrays.copyOf(cells, count);
+            mWeight = Arrays.copyOf(weights, count);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,215 @@
+/**
+ * Class that runs the processing without the Gui, for use on servers without a display. It takes the same options as the Gui, starts a scan with
+ * DuplicateFinder and writes the results with ResultWriter to standard output or a file. The results are written as soon as the scan reports
+ * them complete, while the hash cache is still being written. Results reported before that are not written, because a group may still grow.
+ * Progress goes to standard error, at most once per S_STATUS_INTERVAL_MILLIS. JavaFX is never initialized.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+class CommandLine implements ScanListener {
+
+    // Final class variables.
+    private static final int S_EXIT_OK = 0;
+    private static final int S_EXIT_FAILED = 1;
+    private static final int S_EXIT_USAGE = 2;
+    private static final long S_STATUS_INTERVAL_MILLIS = 5000;
+    private static final String S_USAGE = "Usage: java -jar SamePic.jar --search <directory> [options]\n"
+            + "  --example <file or directory>  Pictures to look for. Without it, duplicates are searched within the search directory.\n"
+            + "  --no-traverse-example          Only use the pictures directly in the example directory.\n"
+            + "  --no-traverse-search           Only use the pictures directly in the search directory.\n"
+            + "  --deviation <0-1024>           Amount of hash bits that may differ. Default 0.\n"
+            + "  --accuracy <percentage>        The same as --deviation, as the accuracy the Gui shows, for example 95.3.\n"
+            + "  --nearest <amount>             The amount of nearest pictures to find for each example picture, instead of --deviation.\n"
+            + "  --format <jsonl|csv>           Default jsonl.\n"
+            + "  --output <file>                Default standard output.\n"
+            + "  --polite                       Leave a core free for other apps.\n";
+
+    // Variables filled by parseArguments.
+    private ScanConfiguration mScanConfiguration = new ScanConfiguration(null);
+    private ResultWriter.Format mFormat = ResultWriter.Format.JSONL;
+    private File mOutputFile;
+
+    // Variables filled by method calls.
+    private long mLastStatusMillis;
+    private String mLastStatus;
+    private boolean mLastStatusPrinted;
+    private IOException mWriteException; // Null if the results were written or the scan didn't complete.
+
+
+
+    private CommandLine() {}
+
+
+
+    /**
+     * Parses args, runs the processing and returns the exit code.
+     *
+     * @param args
+     * @return
+     */
+    static int run(String[] args) {
+        CommandLine commandLine = new CommandLine();
+        try {
+            commandLine.parseArguments(args);
+        } catch (IllegalArgumentException iaEx) {
+            System.err.println(iaEx.getMessage());
+            System.err.print(S_USAGE);
+            return S_EXIT_USAGE;
+        }
+
+        ScanHandle scanHandle = DuplicateFinder.start(commandLine.mScanConfiguration, commandLine); // Stopped by ending the process.
+        try {
+            scanHandle.awaitFinished(); // So the last status is printed and the hash cache is written before the process ends.
+            scanHandle.getResult().get();
+        } catch (InterruptedException | ExecutionException | CancellationException miscEx) {
+            System.err.println("Processing failed: " + miscEx);
+            return S_EXIT_FAILED;
+        }
+
+        if (commandLine.mWriteException != null) {
+            System.err.println("Writing the results failed: " + commandLine.mWriteException.getMessage());
+            return S_EXIT_FAILED;
+        }
+        return S_EXIT_OK;
+    }
+
+    @Override
+    public synchronized void statusChanged(String status) {
+        mLastStatus = status;
+        mLastStatusPrinted = false;
+        long millis = System.currentTimeMillis();
+        if (millis - mLastStatusMillis < S_STATUS_INTERVAL_MILLIS) return;
+
+        mLastStatusMillis = millis;
+        printStatus();
+    }
+
+    @Override
+    public void resultsChanged(List<List<PicData>> result, boolean containsExample, boolean complete) {
+        if (!complete) return;
+
+        try {
+            writeResult(result);
+        } catch (IOException ioEx) {
+            mWriteException = ioEx;
+        }
+    }
+
+    @Override
+    public synchronized void scanFinished() {
+        if (mLastStatus != null && !mLastStatusPrinted) printStatus();
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--example": mScanConfiguration.setExamplePath(Paths.get(getValue(args, ++i))); break;
+                case "--search": mScanConfiguration.setSearchPath(Paths.get(getValue(args, ++i))); break;
+                case "--no-traverse-example": mScanConfiguration.setTraverseExamplePath(false); break;
+                case "--no-traverse-search": mScanConfiguration.setTraverseSearchPath(false); break;
+                case "--deviation": mScanConfiguration.setAllowedDeviation(parseDeviation(getValue(args, ++i))); break;
+                case "--accuracy": mScanConfiguration.setAllowedDeviation(parseAccuracy(getValue(args, ++i))); break;
+                case "--nearest": mScanConfiguration.setNearestAmount(parseNearestAmount(getValue(args, ++i))); break;
+                case "--format": mFormat = parseFormat(getValue(args, ++i)); break;
+                case "--output": mOutputFile = new File(getValue(args, ++i)); break;
+                case "--polite": mScanConfiguration.setPoliteness(Politeness.POLITE); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Path searchPath = mScanConfiguration.getSearchPath();
+        Path examplePath = mScanConfiguration.getExamplePath();
+        if (searchPath == null) throw new IllegalArgumentException("--search is required.");
+        if (!searchPath.toFile().isDirectory()) throw new IllegalArgumentException("Not a directory: " + searchPath);
+        if (examplePath != null && !examplePath.toFile().exists()) throw new IllegalArgumentException("Doesn't exist: " + examplePath);
+        if (examplePath == null && mScanConfiguration.getNearestAmount() > 0) throw new IllegalArgumentException("--nearest needs --example.");
+    }
+
+    /**
+     * Writes result to mOutputFile, or to standard output if there is none.
+     *
+     * @param result
+     * @throws IOException
+     */
+    private void writeResult(List<List<PicData>> result) throws IOException {
+        boolean containsExample = mScanConfiguration.getExamplePath() != null;
+        if (mOutputFile == null) new ResultWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)), mFormat).write(result, containsExample);
+        else {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mOutputFile), StandardCharsets.UTF_8))) {
+                new ResultWriter(writer, mFormat).write(result, containsExample);
+            }
+        }
+    }
+
+    private static String getValue(String[] args, int index) {
+        if (index >= args.length) throw new IllegalArgumentException(args[index - 1] + " needs a value.");
+        return args[index];
+    }
+
+    private static int parseDeviation(String value) {
+        try {
+            int deviation = Integer.parseInt(value);
+            if (deviation >= 0 && deviation <= Hash1024b.BITS) return deviation;
+        } catch (NumberFormatException nfEx) {
+            // Ignore if thrown. Handled below.
+        }
+        throw new IllegalArgumentException("Not a deviation from 0 to " + Hash1024b.BITS + ": " + value);
+    }
+
+    /**
+     * Converts an accuracy percentage to the deviation it stands for, rounded to the nearest amount of bits.
+     *
+     * @param value
+     * @return
+     */
+    private static int parseAccuracy(String value) {
+        try {
+            double accuracy = Double.parseDouble(value.replace(',', '.').replace("%", ""));
+            if (accuracy >= 0 && accuracy <= 100) return (int) Math.round((100 - accuracy) * Hash1024b.BITS / 100);
+        } catch (NumberFormatException nfEx) {
+            // Ignore if thrown. Handled below.
+        }
+        throw new IllegalArgumentException("Not an accuracy from 0 to 100: " + value);
+    }
+
+    private static int parseNearestAmount(String value) {
+        try {
+            int nearestAmount = Integer.parseInt(value);
+            if (nearestAmount > 0) return nearestAmount;
+        } catch (NumberFormatException nfEx) {
+            // Ignore if thrown. Handled below.
+        }
+        throw new IllegalArgumentException("Not an amount of 1 or more: " + value);
+    }
+
+    private static ResultWriter.Format parseFormat(String value) {
+        try {
+            return ResultWriter.Format.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException iaEx) {
+            throw new IllegalArgumentException("Unknown format: " + value);
+        }
+    }
+
+    private void printStatus() {
+        System.err.println(mLastStatus);
+        mLastStatusPrinted = true;
+    }
+}
\ No newline at end of file
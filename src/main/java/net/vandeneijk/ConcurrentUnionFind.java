@@ -0,0 +1,61 @@
+/**
+ * Class that keeps track of which elements (numbered from 0) belong to the same group, while multiple threads join groups at the same time. Each
+ * group is a tree of parent links stored in an AtomicIntegerArray. Links are only changed by compare-and-set, so no locks are needed. A root is
+ * always linked below the root with the smaller number, and paths are halved while searching for a root to keep the trees shallow.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+class ConcurrentUnionFind {
+
+    // Variables related to the constructor.
+    private final AtomicIntegerArray mParents;
+
+
+
+    ConcurrentUnionFind(int size) {
+        mParents = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) mParents.set(i, i);
+    }
+
+
+
+    /**
+     * Returns the root of the group of element.
+     *
+     * @param element
+     * @return
+     */
+    int find(int element) {
+        while (true) {
+            int parent = mParents.get(element);
+            if (parent == element) return element;
+            int grandParent = mParents.get(parent);
+            if (parent != grandParent) mParents.compareAndSet(element, parent, grandParent); // Path halving. May fail if another thread was first, which is fine.
+            element = grandParent;
+        }
+    }
+
+    /**
+     * Joins the groups of elementA and elementB.
+     *
+     * @param elementA
+     * @param elementB
+     */
+    void union(int elementA, int elementB) {
+        while (true) {
+            int rootA = find(elementA);
+            int rootB = find(elementB);
+            if (rootA == rootB) return;
+            if (rootA < rootB) {
+                if (mParents.compareAndSet(rootB, rootB, rootA)) return;
+            } else {
+                if (mParents.compareAndSet(rootA, rootA, rootB)) return;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+/**
+ * Class that calculates a 128 bit digest of the content of a file, so the same file can be recognized after it was renamed, moved or copied. It
+ * uses the MurmurHash3 x64 128 bit algorithm (seed 0), which is fast and not cryptographic. The content can be fed in pieces of any length, so
+ * files don't have to be kept in memory in their entirety.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+final class ContentDigest {
+
+    // Final class variables.
+    private static final long S_C1 = 0x87C37B91114253D5L;
+    private static final long S_C2 = 0x4CF5AD432745937FL;
+    private static final int S_BLOCK_SIZE = 16;
+
+    // Variables filled by method calls.
+    private long mH1;
+    private long mH2;
+    private long mLength;
+    private final ByteBuffer mTail = ByteBuffer.allocate(S_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN); // Bytes that don't fill a block yet.
+
+
+
+    ContentDigest() {}
+
+    /**
+     * Creates a digest with another seed than 0, which is only used to check the algorithm against the published verification value.
+     *
+     * @param seed
+     */
+    ContentDigest(int seed) {
+        mH1 = seed & 0xFFFFFFFFL;
+        mH2 = seed & 0xFFFFFFFFL;
+    }
+
+
+
+    /**
+     * Returns the digest of bytes.
+     *
+     * @param bytes
+     * @return
+     */
+    static long[] calcDigest(byte[] bytes) {
+        ContentDigest contentDigest = new ContentDigest();
+        contentDigest.update(ByteBuffer.wrap(bytes));
+        return contentDigest.finish();
+    }
+
+    /**
+     * Feeds the remaining bytes of buffer to the digest.
+     *
+     * @param buffer
+     */
+    void update(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        mLength += buffer.remaining();
+
+        if (mTail.position() > 0) {
+            while (mTail.hasRemaining() && buffer.hasRemaining()) mTail.put(buffer.get());
+            if (mTail.hasRemaining()) return;
+            mixBlock(mTail.getLong(0), mTail.getLong(8));
+            mTail.clear();
+        }
+
+        while (buffer.remaining() >= S_BLOCK_SIZE) {
+            mixBlock(buffer.getLong(), buffer.getLong());
+        }
+        mTail.put(buffer);
+    }
+
+    /**
+     * Returns the digest of all bytes fed so far as 2 longs.
+     *
+     * @return
+     */
+    long[] finish() {
+        long k1 = 0;
+        long k2 = 0;
+        int tailLength = mTail.position();
+        for (int i = tailLength - 1; i >= 8; i--) k2 = (k2 << 8) | (mTail.get(i) & 0xFF);
+        for (int i = Math.min(tailLength, 8) - 1; i >= 0; i--) k1 = (k1 << 8) | (mTail.get(i) & 0xFF);
+        if (tailLength > 8) mH2 ^= Long.rotateLeft(k2 * S_C2, 33) * S_C1;
+        if (tailLength > 0) mH1 ^= Long.rotateLeft(k1 * S_C1, 31) * S_C2;
+
+        long h1 = mH1 ^ mLength;
+        long h2 = mH2 ^ mLength;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[] {h1, h2};
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    private void mixBlock(long k1, long k2) {
+        mH1 ^= Long.rotateLeft(k1 * S_C1, 31) * S_C2;
+        mH1 = (Long.rotateLeft(mH1, 27) + mH2) * 5 + 0x52DCE729;
+        mH2 ^= Long.rotateLeft(k2 * S_C2, 33) * S_C1;
+        mH2 = (Long.rotateLeft(mH2, 31) + mH1) * 5 + 0x38495AB5;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
\ No newline at end of file
@@ -32,6 +32,7 @@ public class Delete implements Runnable {
 
 
         // Fills a separate List with PicData objects that represent the pictures that may be deleted.
+        mPicDataListList.replaceAll(ArrayList::new); // The Lists of the scan result are shared with its other listeners, so only copies are changed.
         for (List<PicData> picDataList : mPicDataListList) {
             picDataList.removeIf(PicData::isDoNotShowThumbnail); // While iterating, it removes any artificial examples that it comes across. Those are only useful for building the GUI tree.
             picDataList.stream().filter(PicData::isMarkedForDeletion).forEach(mPicDataForDeletionList::add);
@@ -0,0 +1,100 @@
+/**
+ * Class that is the entry point for running scans from other code, such as the Gui, the command line or a service that embeds SamePic. Each scan
+ * runs on a thread of its own with a ProcessController of its own, so multiple scans can run at the same time in the same JVM. Only the hash cache
+ * on disk is shared by the scans.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+public class DuplicateFinder {
+
+    // Final class variables.
+    private static final String S_THREAD_NAME = "SamePic scan";
+
+
+
+    private DuplicateFinder() {}
+
+
+
+    /**
+     * Starts a scan as described by configuration and returns right away. Progress and results are reported to listener. If the scan fails, the
+     * result of the ScanHandle completes with the exception it failed with. Only a cancelled scan completes it with a CancellationException.
+     *
+     * @param configuration
+     * @param listener
+     * @return
+     */
+    public static ScanHandle start(ScanConfiguration configuration, ScanListener listener) {
+        if (configuration.getSearchPath() == null) throw new IllegalArgumentException("A search path is required.");
+
+        ScanHandle scanHandle = new ScanHandle();
+        ProcessController processController = new ProcessController(configuration, new ScanMonitor(scanHandle, listener));
+
+        Thread thread = new Thread(() -> {
+            try {
+                processController.run();
+            } catch (RuntimeException | Error miscEx) {
+                scanHandle.getResultCompletion().completeExceptionally(miscEx);
+                throw miscEx;
+            } finally {
+                if (scanHandle.isCancelled()) scanHandle.getResultCompletion().completeExceptionally(new CancellationException("Scan cancelled.")); // No effect if completed.
+                else scanHandle.getResultCompletion().completeExceptionally(new IllegalStateException("Scan ended without a result."));
+                scanHandle.setFinished();
+            }
+        }, S_THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+        return scanHandle;
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper classes.
+
+    /**
+     * Passes the reports of ProcessController on to a ScanListener and completes the result of a ScanHandle.
+     */
+    private static class ScanMonitor implements ProcessMonitor {
+        private final ScanHandle mScanHandle;
+        private final ScanListener mListener;
+
+        private ScanMonitor(ScanHandle scanHandle, ScanListener listener) {
+            mScanHandle = scanHandle;
+            mListener = listener;
+        }
+
+        @Override
+        public boolean isProcessingActivated() {
+            return !mScanHandle.isCancelled();
+        }
+
+        @Override
+        public void processingStarted() {
+            mListener.scanStarted();
+        }
+
+        @Override
+        public void updateStatus(String status) {
+            mListener.statusChanged(status);
+        }
+
+        @Override
+        public void showResults(List<List<PicData>> result, boolean containsExample, boolean complete) {
+            mListener.resultsChanged(result, containsExample, complete);
+            if (complete) mScanHandle.getResultCompletion().complete(result);
+        }
+
+        @Override
+        public void processingFinished() {
+            mListener.scanFinished();
+        }
+    }
+}
\ No newline at end of file
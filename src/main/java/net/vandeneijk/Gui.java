@@ -47,8 +47,8 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -59,6 +59,8 @@ public class Gui extends Application {
     private static final double TEXT_FIELD_HEIGHT = 25;
     private static final double DEFAULT_H_GAP = 10;
     private static final int DEFAULT_INSERTS = 10;
+    private static final int PREFETCH_GROUP_COUNT = 2; // The amount of groups before and after the selected one of which the thumbnails are prefetched.
+    private static final int TREE_CHUNK_SIZE = 2000; // The amount of groups added to the tree at a time, so the GUI stays responsive in between.
 
 
     // Variables related directly to the nodes for the main GUI.
@@ -100,15 +102,18 @@ public class Gui extends Application {
     private static boolean sSearchTextFieldValid;
     private static boolean sProcessingActivated;
     private static boolean sDeletionActivated;
+    private static ScanHandle sScanHandle;
 
 
-    // Variables that store the results send by ProcessController before it becomes eligible for garbage collection.
+    // Variables that store the results send by the scan before it becomes eligible for garbage collection.
     private static List<List<PicData>> sPicDataListList;
     private static boolean sContainsExample;
 
 
     // Variables that help smoothing out the user experience GUI wise.
-    private static Map<PicData, TreeItem<PicData>> mTvHelperMapping;
+    private static int sTreeGeneration; // Increased each time the tree is started over, which stops the adding of groups to the old tree.
+    private static boolean sAddingGroups;
+    private static final ThumbnailLoader sThumbnailLoader = new ThumbnailLoader(new ThumbnailCache(ThumbnailCache.getDefaultFile()));
     private double mSceneToPrimaryStageDifferenceWidth;
     private double mSceneToPrimaryStageDifferenceHeight;
 
@@ -339,23 +344,24 @@ public class Gui extends Application {
                     sFpThumbnails.getChildren().clear();
                     sTvResults.setVisible(false);
                     sLblApplyChangesCounter.setText("0");
+                    sBtnApplyChanges.setDisable(true);
                     sLblFilePath.setText("");
                     sLblPictureStats.setText("");
 
-                    File examplePath = new File(sTfExamplePath.getText());
-                    File searchPath = new File(sTfSearchPath.getText());
+                    ScanConfiguration scanConfiguration = new ScanConfiguration(Paths.get(sTfSearchPath.getText()));
+                    if (!sCbxDuplicatesWithoutExample.isSelected()) scanConfiguration.setExamplePath(Paths.get(sTfExamplePath.getText()));
 
                     if (sCbAccuracy.getSelectionModel().getSelectedIndex() == -1) sCbAccuracy.getSelectionModel().select(0);
-                    int allowedDeviation = mAccuracyMap.get(sCbAccuracy.getSelectionModel().getSelectedItem());
+                    scanConfiguration.setAllowedDeviation(mAccuracyMap.get(sCbAccuracy.getSelectionModel().getSelectedItem()));
 
-                    boolean traverseExamplePath = sCbxTraverseExamplePath.isSelected();
-                    boolean traverseSearchPath = sCbxTraverseSearchPath.isSelected();
-                    boolean useExamplePath = !sCbxDuplicatesWithoutExample.isSelected();
+                    scanConfiguration.setTraverseExamplePath(sCbxTraverseExamplePath.isSelected());
+                    scanConfiguration.setTraverseSearchPath(sCbxTraverseSearchPath.isSelected());
+                    scanConfiguration.setPoliteness(Politeness.POLITE);
+                    scanConfiguration.setStoreThumbnails(true);
 
-                    Thread processController = new Thread(new ProcessController(examplePath, searchPath, allowedDeviation, traverseExamplePath, traverseSearchPath, useExamplePath));
-                    processController.setDaemon(true);
-                    processController.start();
+                    sScanHandle = DuplicateFinder.start(scanConfiguration, new GuiScanListener());
                 } else {
+                    sScanHandle.cancel();
                     updateGuiSelectorAndOptionNodes();
                 }
             }
@@ -584,7 +590,11 @@ public class Gui extends Application {
         sTvResults = new TreeView<>(sTiRoot);
         sTvResults.setVisible(false);
         sTvResults.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue != null) setThumbnails(newValue.getValue());
+            if (newValue != null) {
+                ResultTreeItem groupItem = ((ResultTreeItem) newValue).getGroupItem();
+                setThumbnails(newValue.getValue(), groupItem);
+                prefetchThumbnails(groupItem);
+            }
         });
 
 
@@ -693,7 +703,9 @@ public class Gui extends Application {
         primaryStage.getIcons().add(new Image("icons/SamePic48.png"));
         primaryStage.setScene(sPrimaryScene);
         primaryStage.sizeToScene();
-        primaryStage.setOnCloseRequest(event -> sProcessingActivated = false);
+        primaryStage.setOnCloseRequest(event -> {
+            if (sScanHandle != null) sScanHandle.cancel();
+        });
         primaryStage.show();
 
         primaryStage.setMinWidth(primaryStage.getWidth());
@@ -820,7 +832,6 @@ public class Gui extends Application {
                 sBtnExampleFile.setDisable(true);
                 sBtnExampleFolder.setDisable(true);
                 sCbxTraverseExamplePath.setDisable(true);
-                sCbAccuracy.setDisable(true);
 
                 if (sProcessingActivated) { // When an instance of ProcessController exists.
                     sTfSearchPath.setEditable(false);
@@ -829,6 +840,7 @@ public class Gui extends Application {
                     sBtnStartStop.setText("Stop");
                     sCbxTraverseSearchPath.setDisable(true);
                     sCbxDuplicatesWithoutExample.setDisable(true);
+                    sCbAccuracy.setDisable(true);
                 } else { // When an instance of ProcessController does NOT exist.
                     sTfSearchPath.setEditable(true);
                     sBtnSearchFolder.setDisable(false);
@@ -836,6 +848,9 @@ public class Gui extends Application {
                     sBtnStartStop.setText("Start");
                     sCbxTraverseSearchPath.setDisable(false);
                     sCbxDuplicatesWithoutExample.setDisable(false);
+                    sCbAccuracy.setDisable(false);
+
+                    if (sCbAccuracy.getSelectionModel().getSelectedIndex() == -1) sCbAccuracy.getSelectionModel().select(0); // To prevent the accuracy combobox from resetting to a state without value.
                 }
             } else { // When using an example.
                 if (sExampleTextFieldValid && sSearchTextFieldValid) { // When text fields with example and search paths are valid.
@@ -915,40 +930,53 @@ public class Gui extends Application {
     }
 
     /**
-     * This method takes an example picture in the form of a PicData parameter. It looks in sPicDataListList for a List that contains this example
-     * picture. Thumbnails are made from all the PicData objects in this List with the help of the getThumbnail method. Those thumbnails are added
-     * to mFpThumbnails.
+     * This method takes an example picture in the form of a PicData parameter and the item of the tree for its List in sPicDataListList.
+     * Thumbnails are made from all the PicData objects in this List with the help of the getThumbnail method. Those thumbnails are added to
+     * mFpThumbnails.
      *
      * @param picData
+     * @param groupItem
      */
-    private void setThumbnails(PicData picData) {
-        List<PicData> thumbnailPicDataList = null;
-        for (List<PicData> picDataList : sPicDataListList) {
-            if (picDataList.contains(picData)) thumbnailPicDataList = picDataList;
-        }
-
+    private void setThumbnails(PicData picData, ResultTreeItem groupItem) {
         sFpThumbnails.getChildren().clear();
 
-        if (thumbnailPicDataList != null) {
-            for (PicData picDataForThumbnail : thumbnailPicDataList) {
-                boolean selectedPic = (picData.equals(picDataForThumbnail));
-                boolean examplePic = (picDataForThumbnail.isExamplePicture());
-                if (!picDataForThumbnail.isDoNotShowThumbnail()) sFpThumbnails.getChildren().add(getThumbnail(new Image(picDataForThumbnail.getUrl().toString(), 158, 158, true, false), selectedPic, examplePic, picDataForThumbnail));
+        for (PicData picDataForThumbnail : groupItem.getGroup()) {
+            boolean selectedPic = (picData.equals(picDataForThumbnail));
+            boolean examplePic = (picDataForThumbnail.isExamplePicture());
+            if (!picDataForThumbnail.isDoNotShowThumbnail()) sFpThumbnails.getChildren().add(getThumbnail(selectedPic, examplePic, picDataForThumbnail, groupItem));
+        }
+    }
+
+    /**
+     * Makes sThumbnailLoader load the thumbnails of the PREFETCH_GROUP_COUNT Lists before and after the List of groupItem in the background, so
+     * they show right away when the user goes to the next or previous item in the tree. The Lists after groupItem go first.
+     *
+     * @param groupItem
+     */
+    private static void prefetchThumbnails(ResultTreeItem groupItem) {
+        for (int distance = PREFETCH_GROUP_COUNT; distance > 0; distance--) { // The last prefetched is loaded first.
+            for (int neighbourIndex : new int[] {groupItem.mGroupIndex - distance, groupItem.mGroupIndex + distance}) {
+                if (neighbourIndex < 0 || neighbourIndex >= sPicDataListList.size()) continue;
+                for (PicData picDataForThumbnail : sPicDataListList.get(neighbourIndex)) {
+                    if (!picDataForThumbnail.isDoNotShowThumbnail()) sThumbnailLoader.prefetch(picDataForThumbnail);
+                }
             }
         }
     }
 
     /**
      * This method returns a GridPane containing a thumbnail and functionality to that thumbnail such as color coding, labeling and context menu.
+     * The thumbnail itself is shown as soon as sThumbnailLoader has loaded it.
      *
-     * @param image
      * @param selectedPic
      * @param examplePic
      * @param picData
+     * @param groupItem
      * @return
      */
-    private GridPane getThumbnail(Image image, boolean selectedPic, boolean examplePic, PicData picData) {
-        ImageView ivImage = new ImageView(String.valueOf(image));
+    private GridPane getThumbnail(boolean selectedPic, boolean examplePic, PicData picData, ResultTreeItem groupItem) {
+        ImageView ivImage = new ImageView();
+        sThumbnailLoader.load(picData, ivImage::setImage);
 
         StackPane stack = new StackPane();
         stack.getChildren().add(ivImage);
@@ -960,8 +988,13 @@ public class Gui extends Application {
         gpImage.setOnMousePressed(new EventHandler<MouseEvent>() {
             @Override
             public void handle(MouseEvent event) {
-                TreeItem<PicData> treeItem = mTvHelperMapping.get(picData);
-                treeItem.setExpanded(true);
+                TreeItem<PicData> treeItem = groupItem;
+                if (groupItem.getValue() != picData) {
+                    for (TreeItem<PicData> secondLevel : groupItem.getChildren()) {
+                        if (secondLevel.getValue() == picData) treeItem = secondLevel;
+                    }
+                }
+                groupItem.setExpanded(true);
                 sTvResults.getSelectionModel().select(treeItem);
 
                 if (mContextMenu != null) mContextMenu.hide();
@@ -976,7 +1009,7 @@ public class Gui extends Application {
                         @Override
                         public void handle(ActionEvent event) {
                             picData.setMarkedForDeletion(!picData.isMarkedForDeletion());
-                            setThumbnails(picData);
+                            setThumbnails(picData, groupItem);
                             setLblApplyChangesCounter();
                         }
                     });
@@ -991,13 +1024,9 @@ public class Gui extends Application {
                     miDeleteDuplicatesMark.setOnAction(new EventHandler<ActionEvent>() {
                         @Override
                         public void handle(ActionEvent event) {
-                            for (List<PicData> picDataList : sPicDataListList) {
-                                if (picDataList.contains(picData)) {
-                                    for (PicData picDataMark : picDataList) {
-                                        if (!picDataMark.isExamplePicture()) picDataMark.setMarkedForDeletion(true);
-                                        setThumbnails(picDataMark);
-                                    }
-                                }
+                            for (PicData picDataMark : groupItem.getGroup()) {
+                                if (!picDataMark.isExamplePicture()) picDataMark.setMarkedForDeletion(true);
+                                setThumbnails(picDataMark, groupItem);
                             }
                             setLblApplyChangesCounter();
                         }
@@ -1009,13 +1038,9 @@ public class Gui extends Application {
                     miDeleteDuplicatesUnmark.setOnAction(new EventHandler<ActionEvent>() {
                         @Override
                         public void handle(ActionEvent event) {
-                            for (List<PicData> picDataList : sPicDataListList) {
-                                if (picDataList.contains(picData)) {
-                                    for (PicData picDataMark : picDataList) {
-                                        if (!picDataMark.isExamplePicture()) picDataMark.setMarkedForDeletion(false);
-                                        setThumbnails(picDataMark);
-                                    }
-                                }
+                            for (PicData picDataMark : groupItem.getGroup()) {
+                                if (!picDataMark.isExamplePicture()) picDataMark.setMarkedForDeletion(false);
+                                setThumbnails(picDataMark, groupItem);
                             }
                             setLblApplyChangesCounter();
                         }
@@ -1035,7 +1060,7 @@ public class Gui extends Application {
                             for (List<PicData> picDataList : sPicDataListList) {
                                 picDataList.stream().filter(x -> x.getPath().getParent().equals(parentPath)).forEach(x -> x.setMarkedForDeletion(true));
                             }
-                            setThumbnails(picData);
+                            setThumbnails(picData, groupItem);
                             setLblApplyChangesCounter();
                         }
                     });
@@ -1050,7 +1075,7 @@ public class Gui extends Application {
                             for (List<PicData> picDataList : sPicDataListList) {
                                 picDataList.stream().filter(x -> x.getPath().getParent().equals(parentPath)).forEach(x -> x.setMarkedForDeletion(false));
                             }
-                            setThumbnails(picData);
+                            setThumbnails(picData, groupItem);
                             setLblApplyChangesCounter();
                         }
                     });
@@ -1127,8 +1152,9 @@ public class Gui extends Application {
     }
 
     /**
-     * This method builds a tree with example pictures that can be clicked. It will be called by ProcessController after it has found results or after
-     * deletion of marked pictures.
+     * This method builds a tree with example pictures that can be clicked. It will be called by GuiScanListener after the scan has found results or after
+     * deletion of marked pictures. The groups are added TREE_CHUNK_SIZE at a time, so the first ones show right away however many there are.
+     * pictureListList is shared with the other listeners of the scan, so it is copied before the Gui changes it.
      *
      * @param pictureListList
      * @param containsExample
@@ -1139,60 +1165,103 @@ public class Gui extends Application {
         Platform.runLater(new Runnable() {
             @Override
             public void run() {
-                sPicDataListList = pictureListList;
+                sPicDataListList = new ArrayList<>(pictureListList);
                 sContainsExample = containsExample;
-                mTvHelperMapping = new HashMap<>();
+                sTreeGeneration++;
+                sAddingGroups = false;
                 sTiRoot.getChildren().clear();
                 sTvResults.setVisible(true);
 
+                addGroupsInChunks();
+            }
+        });
+    }
 
+    /**
+     * This method adds the pictures in pictureListList that are not yet in the tree to the tree, which keeps the selection and the expanded items
+     * of the user. It will be called by GuiScanListener while the scan is still finding results. pictureListList must contain all example pictures and
+     * matches of the tree, in the same order, so each new item is added at the position it has in pictureListList. Groups after the ones in the
+     * tree are left to addGroupsInChunks.
+     *
+     * @param pictureListList
+     */
+    static void updateTree(List<List<PicData>> pictureListList) {
+        Platform.runLater(new Runnable() {
+            @Override
+            public void run() {
+                sPicDataListList = new ArrayList<>(pictureListList);
+                sTvResults.setVisible(true);
 
-                if (containsExample) { // If containsExample, the tree will be build with example pictures which will also be shown as thumbnail.
-                    for (List<PicData> picDataList : pictureListList) {
-                        TreeItem<PicData> firstLevel = new TreeItem<>();
+                ObservableList<TreeItem<PicData>> firstLevels = sTiRoot.getChildren();
+                for (int i = 0; i < firstLevels.size() && i < pictureListList.size(); i++) {
+                    ResultTreeItem firstLevel = (ResultTreeItem) firstLevels.get(i);
+                    if (firstLevel.getValue() != pictureListList.get(i).get(0)) {
+                        firstLevel = createFirstLevel(i);
+                        firstLevels.add(i, firstLevel);
+                    }
+                    firstLevel.mGroupIndex = i;
+                    firstLevel.addMissingChildren();
+                }
 
-                        for (int i = 0; i < picDataList.size(); i++) {
-                            if (i == 0) {
-                                firstLevel = new TreeItem<>(picDataList.get(0));
-                                mTvHelperMapping.put(firstLevel.getValue(), firstLevel);
-                            } else {
-                                TreeItem<PicData> secondLevel = new TreeItem<>(picDataList.get(i));
-                                firstLevel.getChildren().add(secondLevel);
-                                mTvHelperMapping.put(secondLevel.getValue(), secondLevel);
-                            }
-                        }
+                addGroupsInChunks();
+            }
+        });
+        setLblApplyChangesCounter();
+    }
 
-                        sTiRoot.getChildren().add(firstLevel);
-                    }
-                } else { // When no example, the tree will be build with an artificial example picture to be used as handle. This handle will NOT be shown as thumbnail.
-                    int count = 1;
-
-                    for (List<PicData> picDataList : pictureListList) {
-                        TreeItem<PicData> firstLevel;
-                        try {
-                            PicData administrativeExamplePic = new PicData(Paths.get(picDataList.get(0).getPath().toString()), false, true);
-                            picDataList.add(0, administrativeExamplePic);
-                            firstLevel = new TreeItem<>(administrativeExamplePic);
-                            mTvHelperMapping.put(firstLevel.getValue(), firstLevel);
-                        } catch (MalformedURLException mfuEx) {
-                            continue;
-                        }
+    /**
+     * Adds the groups of sPicDataListList that are not yet in the tree, TREE_CHUNK_SIZE in each call of Platform.runLater, so the GUI thread can
+     * handle the user in between. Stops when the tree is started over. Called from the GUI thread only.
+     */
+    private static void addGroupsInChunks() {
+        if (sAddingGroups) return;
+        sAddingGroups = true;
 
-                        for (int i = 1; i < picDataList.size(); i++) {
-                            TreeItem<PicData> secondLevel = new TreeItem<>(picDataList.get(i));
-                            firstLevel.getChildren().add(secondLevel);
-                            mTvHelperMapping.put(secondLevel.getValue(), secondLevel);
-                        }
+        int treeGeneration = sTreeGeneration;
+        Platform.runLater(new Runnable() {
+            @Override
+            public void run() {
+                if (treeGeneration != sTreeGeneration) return;
 
-                        sTiRoot.getChildren().add(firstLevel);
-                    }
-                }
+                int start = sTiRoot.getChildren().size();
+                int end = Math.min(start + TREE_CHUNK_SIZE, sPicDataListList.size());
+                List<TreeItem<PicData>> firstLevels = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) firstLevels.add(createFirstLevel(i));
+                sTiRoot.getChildren().addAll(firstLevels);
+
+                sAddingGroups = false;
+                if (end < sPicDataListList.size()) addGroupsInChunks();
             }
         });
     }
 
     /**
-     * Updates a counter stacked on mBtnApplyChanges that indicates the number of files marked for deletion.
+     * Creates the item of the tree for group groupIndex of sPicDataListList. With example pictures, the example picture is the item itself and is
+     * also shown as thumbnail. Without, an artificial example picture is added to a copy of the group to be used as item. It will NOT be shown as
+     * thumbnail. The copy replaces the group in sPicDataListList, so the List of the scan result stays as it is.
+     *
+     * @param groupIndex
+     * @return
+     */
+    private static ResultTreeItem createFirstLevel(int groupIndex) {
+        List<PicData> picDataList = sPicDataListList.get(groupIndex);
+        if (!sContainsExample && !picDataList.get(0).isDoNotShowThumbnail()) {
+            List<PicData> picDataListCopy = new ArrayList<>(picDataList.size() + 1);
+            try {
+                picDataListCopy.add(new PicData(Paths.get(picDataList.get(0).getPath().toString()), false, true));
+            } catch (MalformedURLException mfuEx) {
+                throw new IllegalStateException(mfuEx); // Can't happen, because the same path was converted to a URL before.
+            }
+            picDataListCopy.addAll(picDataList);
+            sPicDataListList.set(groupIndex, picDataListCopy);
+            picDataList = picDataListCopy;
+        }
+        return new ResultTreeItem(picDataList.get(0), groupIndex);
+    }
+
+    /**
+     * Updates a counter stacked on mBtnApplyChanges that indicates the number of files marked for deletion. The button stays disabled while
+     * processing, because results may still be added.
      */
     private static void setLblApplyChangesCounter() {
         Platform.runLater(new Runnable() {
@@ -1205,7 +1274,7 @@ public class Gui extends Application {
                     }
                 }
                 sLblApplyChangesCounter.setText("" + count);
-                if (count > 0) sBtnApplyChanges.setDisable(false);
+                if (count > 0 && !sProcessingActivated) sBtnApplyChanges.setDisable(false);
                 else sBtnApplyChanges.setDisable(true);
             }
         });
@@ -1282,10 +1351,6 @@ public class Gui extends Application {
     // ========================================================================
     // From here getters and setters for non-private use.
 
-    static boolean isProcessingActivated() {
-        return sProcessingActivated;
-    }
-
     static void setProcessingActivated(boolean processingActivated) {
         sProcessingActivated = processingActivated;
         Platform.runLater(new Runnable() {
@@ -1294,6 +1359,7 @@ public class Gui extends Application {
                 updateGuiSelectorAndOptionNodes();
             }
         });
+        if (!processingActivated && sPicDataListList != null) setLblApplyChangesCounter(); // Pictures may have been marked while processing.
     }
 
     static void setDeletionActivated(boolean deletionActivated) {
@@ -1312,4 +1378,79 @@ public class Gui extends Application {
             }
         });
     }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper classes.
+
+    /**
+     * Item of the tree that only holds the index of its List in sPicDataListList. The items for the matches in the List are created when the item
+     * is expanded for the first time, so a large result doesn't need an item for every picture.
+     */
+    private static class ResultTreeItem extends TreeItem<PicData> {
+        private int mGroupIndex;
+        private final boolean mFirstLevel;
+        private boolean mChildrenCreated;
+
+        private ResultTreeItem(PicData picData, int groupIndex) {
+            this(picData, groupIndex, true);
+        }
+
+        private ResultTreeItem(PicData picData, int groupIndex, boolean firstLevel) {
+            super(picData);
+            mGroupIndex = groupIndex;
+            mFirstLevel = firstLevel;
+        }
+
+        /**
+         * Returns the first level item this item belongs to, which is the item itself for a first level item.
+         *
+         * @return
+         */
+        private ResultTreeItem getGroupItem() {
+            return mFirstLevel ? this : (ResultTreeItem) getParent();
+        }
+
+        private List<PicData> getGroup() {
+            return sPicDataListList.get(getGroupItem().mGroupIndex);
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return !mFirstLevel || getGroup().size() < 2;
+        }
+
+        @Override
+        public ObservableList<TreeItem<PicData>> getChildren() {
+            if (mFirstLevel && !mChildrenCreated) {
+                mChildrenCreated = true;
+                addMissingChildren();
+            }
+            return super.getChildren();
+        }
+
+        /**
+         * Adds an item for each match in the List of this item that doesn't have one yet, at the position it has in the List. Does nothing as long
+         * as the items for the matches haven't been created.
+         */
+        private void addMissingChildren() {
+            if (!mChildrenCreated) return;
+
+            List<PicData> picDataList = getGroup();
+            ObservableList<TreeItem<PicData>> secondLevels = super.getChildren();
+            if (secondLevels.isEmpty()) {
+                List<TreeItem<PicData>> newSecondLevels = new ArrayList<>(picDataList.size() - 1);
+                for (int j = 1; j < picDataList.size(); j++) newSecondLevels.add(new ResultTreeItem(picDataList.get(j), mGroupIndex, false));
+                secondLevels.addAll(newSecondLevels);
+                return;
+            }
+
+            for (int j = 1; j < picDataList.size(); j++) {
+                if (j - 1 < secondLevels.size() && secondLevels.get(j - 1).getValue() == picDataList.get(j)) continue;
+                secondLevels.add(j - 1, new ResultTreeItem(picDataList.get(j), mGroupIndex, false));
+            }
+        }
+    }
 }
\ No newline at end of file
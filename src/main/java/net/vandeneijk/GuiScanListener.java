@@ -0,0 +1,63 @@
+/**
+ * Class that passes the progress and results of a scan on to the Gui. The first result replaces the tree of an earlier run. The Gui only adds the
+ * new pictures of each later result to the tree, which keeps the selection of the user. Only the listener of the latest scan started passes
+ * anything on, so a scan that is still stopping can't mix up the Gui for the next one.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.List;
+
+class GuiScanListener implements ScanListener {
+
+    // Variables filled by method calls.
+    private static volatile GuiScanListener sLatestListener;
+    private boolean mResultsShown;
+
+
+
+    GuiScanListener() {
+        sLatestListener = this;
+    }
+
+
+
+    @Override
+    public void scanStarted() {
+        if (isLatestListener()) Gui.showPleaseWaitAnimation(true);
+    }
+
+    @Override
+    public void statusChanged(String status) {
+        if (isLatestListener()) Gui.updateStatusBar(status);
+    }
+
+    @Override
+    public synchronized void resultsChanged(List<List<PicData>> result, boolean containsExample, boolean complete) {
+        if (!isLatestListener()) return;
+
+        if (mResultsShown) Gui.updateTree(result);
+        else Gui.setTree(result, containsExample);
+        mResultsShown = true;
+    }
+
+    @Override
+    public void scanFinished() {
+        if (!isLatestListener()) return;
+
+        Gui.showPleaseWaitAnimation(false);
+        Gui.setProcessingActivated(false);
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    private boolean isLatestListener() {
+        return sLatestListener == this;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+/**
+ * Class with static helpers for 1024 bit hashes. A hash is stored packed as 16 longs where bit i of the hash (the i-th raster cell, counted row by
+ * row) is found at bit (i % 64) of word (i / 64).
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+final class Hash1024b {
+
+    // Final class variables.
+    static final int BITS = 1024;
+    static final int WORDS = BITS / Long.SIZE;
+
+
+
+    private Hash1024b() {}
+
+
+
+    /**
+     * Returns the number of binary 1's in a packed 1024 bit hash.
+     *
+     * @param hash
+     * @return
+     */
+    static short calcAmountOfOnes(long[] hash) {
+        int count = 0;
+        for (long word : hash) count += Long.bitCount(word);
+        return (short) count;
+    }
+
+    /**
+     * Returns the position of the canonical hash in hashes. This is the lexicographically smallest hash when the words are compared as unsigned
+     * values from word 0 upward. The 4 orientation hashes of a picture and of a rotated copy of it are the same hashes in a different order, so
+     * both get the same canonical hash.
+     *
+     * @param hashes
+     * @return
+     */
+    static int findCanonical(long[][] hashes) {
+        int canonical = 0;
+        for (int i = 1; i < hashes.length; i++) {
+            for (int word = 0; word < WORDS; word++) {
+                int comparison = Long.compareUnsigned(hashes[i][word], hashes[canonical][word]);
+                if (comparison == 0) continue;
+                if (comparison < 0) canonical = i;
+                break;
+            }
+        }
+        return canonical;
+    }
+
+    /**
+     * Returns the hash of the picture rotated by 90 degrees. The bits form a raster of 32x32 cells, which is rotated the same way as
+     * CellGrid.rotateCellValues rotates the cell values. Because the threshold of each bit is the average of the entire picture, this gives the same
+     * hash as hashing the rotated cell values.
+     *
+     * Each row of 32 cells is half a word. The rotation reverses the order of the rows and then transposes the raster by swapping ever smaller
+     * blocks, so it takes 5 passes over the rows instead of a pass per cell.
+     *
+     * @param hash
+     * @return
+     */
+    static long[] rotate(long[] hash) {
+        int[] rows = new int[CellGrid.CELLS_PER_AXIS];
+        for (int row = 0; row < rows.length; row++) rows[rows.length - 1 - row] = (int) (hash[row >>> 1] >>> ((row & 1) << 5));
+
+        int mask = 0x0000FFFF;
+        for (int blockSize = 16; blockSize != 0; blockSize >>>= 1, mask ^= mask << blockSize) {
+            for (int row = 0; row < rows.length; row = (row + blockSize + 1) & ~blockSize) {
+                int swap = ((rows[row] >>> blockSize) ^ rows[row + blockSize]) & mask;
+                rows[row] ^= swap << blockSize;
+                rows[row + blockSize] ^= swap;
+            }
+        }
+
+        long[] result = new long[WORDS];
+        for (int row = 0; row < rows.length; row++) result[row >>> 1] |= (rows[row] & 0xFFFFFFFFL) << ((row & 1) << 5);
+        return result;
+    }
+
+    /**
+     * Returns the amount of mismatched bits between two packed 1024 bit hashes. The words are compared with XOR and counted with popcount. As soon
+     * as the running count exceeds maxDistance the count so far is returned, so the caller only knows it is larger than maxDistance.
+     *
+     * @param hashA
+     * @param hashB
+     * @param maxDistance
+     * @return
+     */
+    static int calcDistance(long[] hashA, long[] hashB, int maxDistance) {
+        int distance = 0;
+        for (int i = 0; i < WORDS; i++) {
+            distance += Long.bitCount(hashA[i] ^ hashB[i]);
+            if (distance > maxDistance) return distance; // Exits early at word granularity. For efficiency.
+        }
+        return distance;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+/**
+ * Class that is an array of packed 1024 bit hashes stored off-heap. The hashes are stored in direct buffers of a fixed size, so the array can hold
+ * more than 2GB of hashes and the garbage collector never has to scan or move them. The array grows a buffer at a time.
+ *
+ * Writes are not synchronized. Reads may be done from multiple threads once the array is filled.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+class HashArray {
+
+    // Final class variables.
+    private static final int S_HASHES_PER_CHUNK_SHIFT = 16;
+    private static final int S_HASHES_PER_CHUNK = 1 << S_HASHES_PER_CHUNK_SHIFT; // 8MB per chunk.
+
+    // Variables filled by method calls.
+    private ByteBuffer[] mChunks = new ByteBuffer[0];
+
+
+
+    HashArray(int capacity) {
+        ensureCapacity(capacity);
+    }
+
+
+
+    /**
+     * Makes sure index capacity - 1 can be written.
+     *
+     * @param capacity
+     */
+    void ensureCapacity(int capacity) {
+        int chunkCount = (int) (((long) capacity + S_HASHES_PER_CHUNK - 1) >>> S_HASHES_PER_CHUNK_SHIFT);
+        if (chunkCount <= mChunks.length) return;
+
+        int oldChunkCount = mChunks.length;
+        mChunks = Arrays.copyOf(mChunks, chunkCount);
+        for (int i = oldChunkCount; i < chunkCount; i++) {
+            mChunks[i] = ByteBuffer.allocateDirect(S_HASHES_PER_CHUNK * Hash1024b.WORDS * Long.BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    void set(int index, long[] hash) {
+        ByteBuffer chunk = mChunks[index >>> S_HASHES_PER_CHUNK_SHIFT];
+        int offset = (index & (S_HASHES_PER_CHUNK - 1)) * Hash1024b.WORDS * Long.BYTES;
+        for (int i = 0; i < Hash1024b.WORDS; i++) chunk.putLong(offset + i * Long.BYTES, hash[i]);
+    }
+
+    /**
+     * Returns a copy of the hash at index.
+     *
+     * @param index
+     * @return
+     */
+    long[] get(int index) {
+        ByteBuffer chunk = mChunks[index >>> S_HASHES_PER_CHUNK_SHIFT];
+        int offset = (index & (S_HASHES_PER_CHUNK - 1)) * Hash1024b.WORDS * Long.BYTES;
+        long[] hash = new long[Hash1024b.WORDS];
+        for (int i = 0; i < Hash1024b.WORDS; i++) hash[i] = chunk.getLong(offset + i * Long.BYTES);
+        return hash;
+    }
+
+    /**
+     * Same as Hash1024b.calcDistance, with the hash at index as hashB. The hash is read directly from its buffer without copying it.
+     *
+     * @param hash
+     * @param index
+     * @param maxDistance
+     * @return
+     */
+    int calcDistance(long[] hash, int index, int maxDistance) {
+        ByteBuffer chunk = mChunks[index >>> S_HASHES_PER_CHUNK_SHIFT];
+        int offset = (index & (S_HASHES_PER_CHUNK - 1)) * Hash1024b.WORDS * Long.BYTES;
+        int distance = 0;
+        for (int i = 0; i < Hash1024b.WORDS; i++) {
+            distance += Long.bitCount(hash[i] ^ chunk.getLong(offset + i * Long.BYTES));
+            if (distance > maxDistance) return distance;
+        }
+        return distance;
+    }
+}
\ No newline at end of file
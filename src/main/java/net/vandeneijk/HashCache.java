@@ -0,0 +1,342 @@
+/**
+ * Class that keeps the hashes of pictures on disk between runs, so a picture that didn't change since an earlier run doesn't have to be decoded
+ * again. The cache has two tiers. The first tier identifies a picture by a 64 bit hash of its absolute path together with its file size and last
+ * modified time, which only costs reading the file attributes. The second tier identifies a picture by the ContentDigest of the file, so a
+ * picture that was renamed, moved or copied only costs one sequential read of the file instead of a decode.
+ *
+ * A file that was read but couldn't be hashed, because it is too small, damaged or of an unsupported type, is stored as well, with a width of
+ * S_NOT_HASHED_WIDTH instead of hashes. So it isn't read or decoded again either while it is unchanged.
+ *
+ * The cache is a single binary file of fixed size records that is only appended to. A later record for the same path replaces an earlier one.
+ * When the cache is opened the file is memory-mapped and an index from path hash and one from content digest to record are built, so a lookup
+ * reads only the record itself.
+ * New records are collected in a buffer. A full buffer is swapped for an empty one under the lock of the instance and appended outside it, so
+ * the threads adding records don't wait for the disk. The batches are appended while holding a file lock, so a second instance of the application can't corrupt the file. A file lock is
+ * held by the whole JVM, so the appends of the scans within the same JVM take turns on S_APPEND_LOCK first. A file that
+ * can't be read or has an unknown version is ignored and replaced at the next append.
+ *
+ * Once there is no room for another batch below S_MAX_FILE_SIZE, further batches are dropped and the file is started over the next time it is
+ * opened. It isn't started over right away, because it is mapped in memory by this and possibly other instances, and a mapped file can't be
+ * truncated safely. A deleted file stays mapped until the instances that mapped it are done with it.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+class HashCache {
+
+    // Final class variables.
+    private static final int S_MAGIC = 0x53504843; // "SPHC"
+    private static final int S_VERSION = 2;
+    private static final int S_HEADER_SIZE = 8;
+    private static final int S_RECORD_SIZE = 8 + 8 + 8 + 16 + 4 + 4 + 4 * Hash1024b.WORDS * 8; // path hash, file size, last modified, content digest, width, height and 4 hashes.
+    private static final int S_CONTENT_DIGEST_POSITION = 24;
+    private static final int S_PICTURE_POSITION = 40;
+    private static final int S_RECORDS_PER_REGION = Integer.MAX_VALUE / S_RECORD_SIZE; // A single mapping can't be larger than 2GB.
+    private static final int S_RECORDS_PER_APPEND = 256;
+    private static final long S_MAX_FILE_SIZE = 16L * 1024 * 1024 * 1024; // Room for about 30 million records.
+    private static final int S_NOT_HASHED_WIDTH = 0; // A picture that can be hashed is at least PicPreProcessor.S_MIN_PICTURE_LENGTH wide.
+    private static final Object S_APPEND_LOCK = new Object();
+
+    // Variables related to the constructor.
+    private final Path mFile;
+    private final MappedByteBuffer[] mRegions;
+    private final long[] mPathIndexKeys;
+    private final int[] mPathIndexRecords; // Record number + 1 for each slot of mPathIndexKeys. 0 is an empty slot.
+    private final long[] mContentIndexKeys; // First half of the content digest.
+    private final int[] mContentIndexRecords;
+
+    // Variables filled by method calls.
+    private ByteBuffer mPendingRecords = ByteBuffer.allocate(S_RECORD_SIZE * S_RECORDS_PER_APPEND);
+
+
+
+    private HashCache(Path file, MappedByteBuffer[] regions, int recordCount) {
+        mFile = file;
+        mRegions = regions;
+
+        int capacity = Integer.highestOneBit(Math.max(recordCount, 8) * 2 - 1) * 2; // Power of 2 with a load factor of at most 0.5.
+        mPathIndexKeys = new long[capacity];
+        mPathIndexRecords = new int[capacity];
+        mContentIndexKeys = new long[capacity];
+        mContentIndexRecords = new int[capacity];
+        for (int record = 0; record < recordCount; record++) {
+            ByteBuffer buffer = getRecordBuffer(record);
+            int position = getRecordPosition(record);
+
+            long pathHash = buffer.getLong(position);
+            int slot = findSlot(mPathIndexKeys, mPathIndexRecords, pathHash);
+            mPathIndexKeys[slot] = pathHash;
+            mPathIndexRecords[slot] = record + 1; // Overwrites an earlier record of the same path.
+
+            long contentKey = buffer.getLong(position + S_CONTENT_DIGEST_POSITION);
+            if (contentKey == 0 && buffer.getLong(position + S_CONTENT_DIGEST_POSITION + 8) == 0) continue; // Record without a content digest.
+            slot = findSlot(mContentIndexKeys, mContentIndexRecords, contentKey);
+            mContentIndexKeys[slot] = contentKey;
+            mContentIndexRecords[slot] = record + 1;
+        }
+    }
+
+
+
+    /**
+     * Returns the location of the cache file in the home directory of the user.
+     *
+     * @return
+     */
+    static Path getDefaultFile() {
+        return Paths.get(System.getProperty("user.home"), ".samepic", "hashcache.bin");
+    }
+
+    /**
+     * Opens the cache stored in file. If file doesn't exist or can't be read, an empty cache is returned that will (try to) create file when
+     * records are added.
+     *
+     * @param file
+     * @return
+     */
+    static HashCache open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (!hasValidHeader(channel, size)) return new HashCache(file, new MappedByteBuffer[0], 0);
+            if (isFull(size)) {
+                try {
+                    Files.delete(file); // Only the path is gone for another instance that still has the file open.
+                    return new HashCache(file, new MappedByteBuffer[0], 0);
+                } catch (IOException ioEx) {
+                    // May be ignored. The file is used as it is though.
+                }
+            }
+
+            long recordCount = (size - S_HEADER_SIZE) / S_RECORD_SIZE; // A partial record at the end, left by an interrupted append, is ignored.
+            if (recordCount > Integer.MAX_VALUE - 1) recordCount = Integer.MAX_VALUE - 1;
+            MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((recordCount + S_RECORDS_PER_REGION - 1) / S_RECORDS_PER_REGION)];
+            for (int i = 0; i < regions.length; i++) {
+                long firstRecord = (long) i * S_RECORDS_PER_REGION;
+                long regionRecords = Math.min(S_RECORDS_PER_REGION, recordCount - firstRecord);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, S_HEADER_SIZE + firstRecord * S_RECORD_SIZE, regionRecords * S_RECORD_SIZE);
+            }
+            return new HashCache(file, regions, (int) recordCount);
+        } catch (IOException ioEx) {
+            return new HashCache(file, new MappedByteBuffer[0], 0); // May be ignored. All pictures will be processed as new ones.
+        }
+    }
+
+    /**
+     * Looks up picData by its path, file size and last modified time. When found, the width, height and hashes are restored into picData and true
+     * is returned. A file that couldn't be hashed before is found without restoring anything, so picData has no hashes then.
+     *
+     * @param picData
+     * @return
+     */
+    boolean restore(PicData picData) {
+        long pathHash = calcPathHash(picData.getPath());
+        int record = mPathIndexRecords[findSlot(mPathIndexKeys, mPathIndexRecords, pathHash)] - 1;
+        if (record < 0) return false;
+
+        ByteBuffer buffer = getRecordBuffer(record);
+        int position = getRecordPosition(record);
+        if (buffer.getLong(position + 8) != picData.getPictureFileSize() || buffer.getLong(position + 16) != picData.getPictureLastModified()) return false;
+
+        restoreRecord(buffer, position, picData);
+        return true;
+    }
+
+    /**
+     * Looks up picData by its file size and content digest. When found, the width, height and hashes are restored into picData and true is
+     * returned. A file that couldn't be hashed before is found without restoring anything, so picData has no hashes then.
+     *
+     * @param picData
+     * @return
+     */
+    boolean restoreByContent(PicData picData) {
+        long[] contentDigest = picData.getContentDigest();
+        if (contentDigest == null) return false;
+        int record = mContentIndexRecords[findSlot(mContentIndexKeys, mContentIndexRecords, contentDigest[0])] - 1;
+        if (record < 0) return false;
+
+        ByteBuffer buffer = getRecordBuffer(record);
+        int position = getRecordPosition(record);
+        if (buffer.getLong(position + 8) != picData.getPictureFileSize() || buffer.getLong(position + S_CONTENT_DIGEST_POSITION + 8) != contentDigest[1]) return false;
+
+        restoreRecord(buffer, position, picData);
+        return true;
+    }
+
+    /**
+     * Adds the hashes of picData to the cache. If picData has no hashes, it is added as a file that couldn't be hashed. The record is written to
+     * disk with the next batch or when close is called.
+     *
+     * @param picData
+     */
+    void put(PicData picData) {
+        ByteBuffer fullRecords;
+        synchronized (this) {
+            mPendingRecords.putLong(calcPathHash(picData.getPath()));
+            mPendingRecords.putLong(picData.getPictureFileSize());
+            mPendingRecords.putLong(picData.getPictureLastModified());
+            long[] contentDigest = picData.getContentDigest() != null ? picData.getContentDigest() : new long[2];
+            mPendingRecords.putLong(contentDigest[0]);
+            mPendingRecords.putLong(contentDigest[1]);
+            if (picData.getHash1024b() != null) {
+                mPendingRecords.putInt(picData.getPictureWidth());
+                mPendingRecords.putInt(picData.getPictureHeight());
+                for (long[] hash : picData.getHash1024b()) {
+                    for (long word : hash) mPendingRecords.putLong(word);
+                }
+            } else {
+                mPendingRecords.putInt(S_NOT_HASHED_WIDTH);
+                mPendingRecords.position(mPendingRecords.position() + S_RECORD_SIZE - S_PICTURE_POSITION - 4); // The height and hashes stay unused.
+            }
+
+            if (mPendingRecords.hasRemaining()) return;
+            fullRecords = swapPendingRecords();
+        }
+        appendRecords(fullRecords);
+    }
+
+    /**
+     * Writes the records that are not yet on disk.
+     */
+    void close() {
+        ByteBuffer records;
+        synchronized (this) {
+            if (mPendingRecords.position() == 0) return;
+            records = swapPendingRecords();
+        }
+        appendRecords(records);
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    /**
+     * Returns mPendingRecords, ready to be read, after replacing it with an empty buffer. Must be called while holding the lock of this instance.
+     *
+     * @return
+     */
+    private ByteBuffer swapPendingRecords() {
+        ByteBuffer records = mPendingRecords;
+        mPendingRecords = ByteBuffer.allocate(S_RECORD_SIZE * S_RECORDS_PER_APPEND);
+        records.flip();
+        return records;
+    }
+
+    /**
+     * Appends records to the cache file while holding a lock on it. If the file has an unknown version it is started over. If the file is full,
+     * records are dropped.
+     *
+     * @param records
+     */
+    private void appendRecords(ByteBuffer records) {
+        try {
+            Files.createDirectories(mFile.getParent());
+            synchronized (S_APPEND_LOCK) { // Otherwise channel.lock throws an OverlappingFileLockException.
+                try (FileChannel channel = FileChannel.open(mFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    channel.lock(); // Released when the channel is closed.
+                    long size = channel.size();
+                    if (!hasValidHeader(channel, size)) {
+                        channel.truncate(0);
+                        ByteBuffer header = ByteBuffer.allocate(S_HEADER_SIZE).putInt(S_MAGIC).putInt(S_VERSION);
+                        header.flip();
+                        while (header.hasRemaining()) channel.write(header, header.position());
+                        size = S_HEADER_SIZE;
+                    } else {
+                        if (isFull(size)) return; // May be ignored. The pictures will be processed again next time.
+                        size = S_HEADER_SIZE + (size - S_HEADER_SIZE) / S_RECORD_SIZE * S_RECORD_SIZE; // Drops a partial record of an interrupted append.
+                        channel.truncate(size);
+                    }
+
+                    while (records.hasRemaining()) size += channel.write(records, size);
+                }
+            }
+        } catch (IOException ioEx) {
+            // May be ignored. The pictures will be processed again next time.
+        }
+    }
+
+    private static boolean hasValidHeader(FileChannel channel, long size) throws IOException {
+        if (size < S_HEADER_SIZE) return false;
+        ByteBuffer header = ByteBuffer.allocate(S_HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) return false;
+        }
+        return header.getInt(0) == S_MAGIC && header.getInt(4) == S_VERSION;
+    }
+
+    /**
+     * Returns true if a file of size has no room for another batch of records.
+     *
+     * @param size
+     * @return
+     */
+    private static boolean isFull(long size) {
+        return size + (long) S_RECORD_SIZE * S_RECORDS_PER_APPEND > S_MAX_FILE_SIZE;
+    }
+
+    private static void restoreRecord(ByteBuffer buffer, int position, PicData picData) {
+        position += S_PICTURE_POSITION;
+        if (buffer.getInt(position) == S_NOT_HASHED_WIDTH) return;
+
+        picData.setPictureWidth(buffer.getInt(position));
+        picData.setPictureHeight(buffer.getInt(position + 4));
+        long[][] hash1024b = new long[4][Hash1024b.WORDS];
+        position += 8;
+        for (long[] hash : hash1024b) {
+            for (int i = 0; i < hash.length; i++, position += 8) hash[i] = buffer.getLong(position);
+        }
+        picData.setHash1024b(hash1024b);
+    }
+
+    /**
+     * Returns the slot of indexKeys that holds key, or the empty slot where it should be added. Uses linear probing.
+     *
+     * @param indexKeys
+     * @param indexRecords
+     * @param key
+     * @return
+     */
+    private static int findSlot(long[] indexKeys, int[] indexRecords, long key) {
+        int mask = indexKeys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (indexRecords[slot] != 0 && indexKeys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private ByteBuffer getRecordBuffer(int record) {
+        return mRegions[record / S_RECORDS_PER_REGION];
+    }
+
+    private int getRecordPosition(int record) {
+        return (record % S_RECORDS_PER_REGION) * S_RECORD_SIZE;
+    }
+
+    /**
+     * Returns the 64 bit FNV-1a hash of the absolute path.
+     *
+     * @param path
+     * @return
+     */
+    static long calcPathHash(Path path) {
+        String pathString = path.toAbsolutePath().toString();
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < pathString.length(); i++) {
+            hash ^= pathString.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,24 @@
+/**
+ * Interface for an index over the 1024 bit hashes of the pictures in a HashStore that finds all pictures within a Hamming distance of a picture,
+ * without comparing the picture against every picture. Only the canonical hash of each picture is indexed. Rotating both pictures the same way
+ * doesn't change their distance, so querying with each of the 4 orientation hashes of the other picture covers all 16 combinations. An exact lookup
+ * only needs the canonical hash of the other picture.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.function.IntConsumer;
+
+interface HashIndex {
+
+    /**
+     * Passes the id of each indexed picture that is within maxDistance of one of hashes to result. An id may be passed more than once.
+     *
+     * @param hashes
+     * @param maxDistance
+     * @param result
+     */
+    void findWithinDistance(long[][] hashes, int maxDistance, IntConsumer result);
+}
\ No newline at end of file
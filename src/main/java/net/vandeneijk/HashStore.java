@@ -0,0 +1,262 @@
+/**
+ * Class that stores the hashes and metadata of a large amount of pictures without an object per picture. Each picture is addressed by an int id.
+ * Only the canonical hash of each picture is stored, because the other 3 orientations are rotations of it that can be derived when needed. The
+ * hashes are stored off-heap in a HashArray. The width, height, file size, last modified time and the location of the path are stored in parallel
+ * primitive arrays, and the paths themselves as UTF-8 in large byte arrays.
+ *
+ * Pictures are added while they are hashed, from many threads at once. Each thread adds to a buffer of its own, which is only copied into the
+ * store under its lock once it is full, so the threads hardly ever wait for each other. Before the first lookup the store is sorted by the amount
+ * of ones of the hashes, after which the ids are fixed and nothing can be added anymore. Pictures with a similar hash have a similar amount of
+ * ones, so the hashes that are compared against each other end up close to each other in memory.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class HashStore {
+
+    // Final class variables.
+    private static final int S_PATH_CHUNK_SIZE = 1 << 20;
+    private static final int S_INITIAL_CAPACITY = 1024;
+    private static final int S_ADD_BUFFER_SIZE = 64;
+
+    // Variables filled by method calls.
+    private HashArray mHashes = new HashArray(S_INITIAL_CAPACITY);
+    private short[] mAmountsOfOnes = new short[S_INITIAL_CAPACITY];
+    private int[] mWidths = new int[S_INITIAL_CAPACITY];
+    private int[] mHeights = new int[S_INITIAL_CAPACITY];
+    private long[] mFileSizes = new long[S_INITIAL_CAPACITY];
+    private long[] mLastModifieds = new long[S_INITIAL_CAPACITY];
+    private long[] mPathLocations = new long[S_INITIAL_CAPACITY]; // The number of the path chunk in the upper half and the position in it in the lower half.
+    private int[] mPathLengths = new int[S_INITIAL_CAPACITY];
+    private final List<byte[]> mPathChunks = new ArrayList<>();
+    private int mPathChunkPosition = S_PATH_CHUNK_SIZE; // Makes the first path start a new chunk. A path longer than a chunk gets a chunk of its own.
+    private int mSize;
+    private volatile boolean mSorted;
+    private final ThreadLocal<AddBuffer> mAddBuffer = ThreadLocal.withInitial(this::createAddBuffer);
+    private final List<AddBuffer> mAddBuffers = new ArrayList<>(); // The buffers of all threads, so they can be flushed before sorting.
+
+
+
+    /**
+     * Adds a PicData object that has its hashes. picData is kept in the buffer of the calling thread until that buffer is full or the store is
+     * sorted. May be called from multiple threads, but every call must be finished before sort is called.
+     *
+     * @param picData
+     */
+    void add(PicData picData) {
+        if (mSorted) throw new IllegalStateException("Pictures can't be added after the store is sorted.");
+        mAddBuffer.get().add(picData);
+    }
+
+    /**
+     * Sorts the pictures by the amount of ones of their hashes, which gives each picture its final id. Does nothing if the store is already sorted.
+     * A counting sort is used, because the amount of ones is never larger than 1024.
+     */
+    void sort() {
+        flushAddBuffers();
+        sortStore();
+    }
+
+    /**
+     * Returns the amount of pictures added, including the ones still in a buffer.
+     *
+     * @return
+     */
+    int size() {
+        flushAddBuffers();
+        synchronized (this) {
+            return mSize;
+        }
+    }
+
+    /**
+     * Returns a copy of the canonical hash of id. See PicData.getCanonicalHash1024b.
+     *
+     * @param id
+     * @return
+     */
+    long[] getCanonicalHash1024b(int id) {
+        return mHashes.get(id);
+    }
+
+    /**
+     * Returns the 4 orientation hashes of id, with the canonical hash first and each next one rotated by another 90 degrees.
+     *
+     * @param id
+     * @return
+     */
+    long[][] getHash1024b(int id) {
+        long[][] hashes = new long[4][];
+        hashes[0] = getCanonicalHash1024b(id);
+        for (int orientation = 1; orientation < hashes.length; orientation++) hashes[orientation] = Hash1024b.rotate(hashes[orientation - 1]);
+        return hashes;
+    }
+
+    /**
+     * Same as Hash1024b.calcDistance, with the canonical hash of id as hashB.
+     *
+     * @param hash
+     * @param id
+     * @param maxDistance
+     * @return
+     */
+    int calcDistance(long[] hash, int id, int maxDistance) {
+        return mHashes.calcDistance(hash, id, maxDistance);
+    }
+
+    String getPathString(int id) {
+        long pathLocation = mPathLocations[id];
+        return new String(mPathChunks.get((int) (pathLocation >>> 32)), (int) pathLocation, mPathLengths[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a new PicData object for id with its path, dimensions, file size and last modified time. Used for the pictures in the results only.
+     *
+     * @param id
+     * @param examplePicture
+     * @return
+     */
+    PicData createPicData(int id, boolean examplePicture) {
+        try {
+            PicData picData = new PicData(Paths.get(getPathString(id)), examplePicture, false);
+            picData.setPictureWidth(mWidths[id]);
+            picData.setPictureHeight(mHeights[id]);
+            picData.setPictureFileSize(mFileSizes[id]);
+            picData.setPictureLastModified(mLastModifieds[id]);
+            return picData;
+        } catch (MalformedURLException mfuEx) {
+            throw new IllegalStateException(mfuEx); // Can't happen, because the same path was converted to a URL when it was added.
+        }
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods and classes.
+
+    private synchronized void addToStore(PicData picData) {
+        if (mSorted) throw new IllegalStateException("Pictures can't be added after the store is sorted.");
+        if (mSize == mWidths.length) grow();
+
+        int id = mSize++;
+        mHashes.set(id, picData.getCanonicalHash1024b());
+
+        mAmountsOfOnes[id] = picData.getHash1024bAmountOfOnes();
+        mWidths[id] = picData.getPictureWidth();
+        mHeights[id] = picData.getPictureHeight();
+        mFileSizes[id] = picData.getPictureFileSize();
+        mLastModifieds[id] = picData.getPictureLastModified();
+
+        byte[] path = picData.getPath().toString().getBytes(StandardCharsets.UTF_8);
+        if (mPathChunkPosition + path.length > S_PATH_CHUNK_SIZE) {
+            mPathChunks.add(new byte[Math.max(S_PATH_CHUNK_SIZE, path.length)]);
+            mPathChunkPosition = 0;
+        }
+        System.arraycopy(path, 0, mPathChunks.get(mPathChunks.size() - 1), mPathChunkPosition, path.length);
+        mPathLocations[id] = ((long) (mPathChunks.size() - 1) << 32) | mPathChunkPosition;
+        mPathLengths[id] = path.length;
+        mPathChunkPosition += path.length;
+    }
+
+    private synchronized void sortStore() {
+        if (mSorted) return;
+        mSorted = true;
+
+        int[] amountCounts = new int[Hash1024b.BITS + 2];
+        for (int id = 0; id < mSize; id++) amountCounts[mAmountsOfOnes[id] + 1]++;
+        for (int i = 1; i < amountCounts.length; i++) amountCounts[i] += amountCounts[i - 1];
+        int[] oldIds = new int[mSize];
+        for (int id = 0; id < mSize; id++) oldIds[amountCounts[mAmountsOfOnes[id]]++] = id;
+
+        HashArray hashes = new HashArray(mSize);
+        for (int id = 0; id < mSize; id++) hashes.set(id, mHashes.get(oldIds[id]));
+        mHashes = hashes;
+
+        short[] amountsOfOnes = new short[mSize];
+        int[] widths = new int[mSize];
+        int[] heights = new int[mSize];
+        long[] fileSizes = new long[mSize];
+        long[] lastModifieds = new long[mSize];
+        long[] pathLocations = new long[mSize];
+        int[] pathLengths = new int[mSize];
+        for (int id = 0; id < mSize; id++) {
+            int oldId = oldIds[id];
+            amountsOfOnes[id] = mAmountsOfOnes[oldId];
+            widths[id] = mWidths[oldId];
+            heights[id] = mHeights[oldId];
+            fileSizes[id] = mFileSizes[oldId];
+            lastModifieds[id] = mLastModifieds[oldId];
+            pathLocations[id] = mPathLocations[oldId];
+            pathLengths[id] = mPathLengths[oldId];
+        }
+        mAmountsOfOnes = amountsOfOnes;
+        mWidths = widths;
+        mHeights = heights;
+        mFileSizes = fileSizes;
+        mLastModifieds = lastModifieds;
+        mPathLocations = pathLocations;
+        mPathLengths = pathLengths;
+    }
+
+    private synchronized AddBuffer createAddBuffer() {
+        AddBuffer addBuffer = new AddBuffer();
+        mAddBuffers.add(addBuffer);
+        return addBuffer;
+    }
+
+    /**
+     * Copies the PicData objects in the buffers of all threads into the store. The lock of a buffer is always taken before the lock of the store,
+     * so the buffers are flushed from a copy of mAddBuffers without holding the lock of the store.
+     */
+    private void flushAddBuffers() {
+        List<AddBuffer> addBuffers;
+        synchronized (this) {
+            addBuffers = new ArrayList<>(mAddBuffers);
+        }
+        for (AddBuffer addBuffer : addBuffers) addBuffer.flush();
+    }
+
+    private void grow() {
+        int capacity = mWidths.length * 2;
+        mHashes.ensureCapacity(capacity);
+        mAmountsOfOnes = Arrays.copyOf(mAmountsOfOnes, capacity);
+        mWidths = Arrays.copyOf(mWidths, capacity);
+        mHeights = Arrays.copyOf(mHeights, capacity);
+        mFileSizes = Arrays.copyOf(mFileSizes, capacity);
+        mLastModifieds = Arrays.copyOf(mLastModifieds, capacity);
+        mPathLocations = Arrays.copyOf(mPathLocations, capacity);
+        mPathLengths = Arrays.copyOf(mPathLengths, capacity);
+    }
+
+    /**
+     * The buffer of a single thread. Only its own thread adds to it, so its lock is only contended while the store is sorted.
+     */
+    private class AddBuffer {
+        private final PicData[] mPicDataBuffer = new PicData[S_ADD_BUFFER_SIZE];
+        private int mSize;
+
+        private synchronized void add(PicData picData) {
+            mPicDataBuffer[mSize++] = picData;
+            if (mSize == mPicDataBuffer.length) flush();
+        }
+
+        private synchronized void flush() {
+            if (mSize == 0) return;
+            synchronized (HashStore.this) {
+                for (int i = 0; i < mSize; i++) addToStore(mPicDataBuffer[i]);
+            }
+            Arrays.fill(mPicDataBuffer, 0, mSize, null);
+            mSize = 0;
+        }
+    }
+}
\ No newline at end of file
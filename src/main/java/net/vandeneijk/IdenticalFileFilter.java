@@ -0,0 +1,246 @@
+/**
+ * Class that finds files with byte-identical content while they are processed, so only one file of each group has to be decoded and hashed. The
+ * other files of a group get the same hashes. Files are recognized at two levels. Paths to the same physical file, through symbolic links, hard
+ * links or overlapping root directories, have the same file key, so only one of them is even read. Other files are recognized by the ContentDigest
+ * that PicPreProcessor calculates from the bytes it reads anyway, so no file is read an extra time and no file has to be known in advance.
+ *
+ * For each content only the digest, the dimensions and the canonical hash are kept, because the other 3 orientations are rotations of it. They
+ * are kept for the whole scan, because a copy may be found at any time, so no object is created per file. The digests are looked up in an
+ * open-addressed table of content ids, the other values are stored in parallel primitive arrays and the hashes off-heap in a HashArray, like in
+ * HashStore. The file keys are looked up in an open-addressed table of their own, which gives the content id of each file.
+ *
+ * All lookups are done under the lock of the filter. They are short compared to reading and decoding a file. A thread that waits for the first
+ * file with the same content waits on the lock of the filter and is woken by finishFile or finishContent.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.Arrays;
+
+class IdenticalFileFilter {
+
+    // Final class variables.
+    private static final int S_INITIAL_CAPACITY = 1024; // Must be a power of 2.
+    private static final int S_PROCESSING = -2; // The file or content is claimed, but not finished yet.
+    private static final int S_NO_CONTENT = -1; // The file was finished without being hashed.
+    private static final byte S_STATE_PROCESSING = 0;
+    private static final byte S_STATE_HASHED = 1;
+    private static final byte S_STATE_FAILED = 2;
+
+    // Variables filled by method calls.
+    private int[] mContentSlots = new int[S_INITIAL_CAPACITY * 2]; // Content id + 1 by content digest, 0 if the slot is empty.
+    private long[] mContentDigests = new long[S_INITIAL_CAPACITY * 2]; // Both halves of the digest of each content id.
+    private byte[] mContentStates = new byte[S_INITIAL_CAPACITY];
+    private int[] mWidths = new int[S_INITIAL_CAPACITY];
+    private int[] mHeights = new int[S_INITIAL_CAPACITY];
+    private final HashArray mCanonicalHashes = new HashArray(0); // Grows once the first content is hashed.
+    private int mContentCount;
+    private Object[] mFileKeys = new Object[S_INITIAL_CAPACITY * 2];
+    private int[] mFileContentIds = new int[S_INITIAL_CAPACITY * 2]; // The content id of the file key in the same slot, S_PROCESSING or S_NO_CONTENT.
+    private int mFileCount;
+
+
+
+    /**
+     * Same as claimContent, for the physical file of picData instead of its content. Always returns true if picData has no file key. Called before
+     * the file is read.
+     *
+     * @param picData
+     * @return
+     */
+    synchronized boolean claimFile(PicData picData) {
+        Object fileKey = picData.getFileKey();
+        if (fileKey == null) return true;
+
+        int slot = findFileSlot(fileKey);
+        if (mFileKeys[slot] == null) {
+            addFile(slot, fileKey);
+            return true;
+        }
+
+        try {
+            while (mFileContentIds[slot] == S_PROCESSING) {
+                wait();
+                slot = findFileSlot(fileKey); // The table may have grown in the meantime.
+            }
+            int contentId = mFileContentIds[slot];
+            if (contentId != S_NO_CONTENT) {
+                while (mContentStates[contentId] == S_STATE_PROCESSING) wait();
+                copyTo(contentId, picData);
+            }
+        } catch (InterruptedException iEx) {
+            Thread.currentThread().interrupt(); // The scan is cancelled. The file is skipped without hashes.
+        }
+        return false;
+    }
+
+    /**
+     * Same as finishContent, for the physical file of picData.
+     *
+     * @param picData
+     */
+    synchronized void finishFile(PicData picData) {
+        Object fileKey = picData.getFileKey();
+        if (fileKey == null) return;
+
+        int contentId = S_NO_CONTENT;
+        if (picData.getHash1024b() != null) {
+            long[] contentDigest = picData.getContentDigest();
+            int contentSlot = findContentSlot(contentDigest);
+            if (mContentSlots[contentSlot] == 0) { // The content was restored from the HashCache, so it wasn't claimed.
+                contentId = addContent(contentSlot, contentDigest);
+                setContent(contentId, picData);
+            } else contentId = mContentSlots[contentSlot] - 1;
+        }
+        mFileContentIds[findFileSlot(fileKey)] = contentId;
+        notifyAll();
+    }
+
+    /**
+     * Returns true if picData is the first file with its content, which then has to be processed, after which finishContent must be called.
+     * Otherwise waits until the first file is processed, gives picData the same dimensions and hashes and returns false. The content digest of
+     * picData must be set. May be called from multiple threads.
+     *
+     * @param picData
+     * @return
+     */
+    synchronized boolean claimContent(PicData picData) {
+        long[] contentDigest = picData.getContentDigest();
+        int contentSlot = findContentSlot(contentDigest);
+        if (mContentSlots[contentSlot] == 0) {
+            addContent(contentSlot, contentDigest);
+            return true;
+        }
+
+        int contentId = mContentSlots[contentSlot] - 1;
+        try {
+            while (mContentStates[contentId] == S_STATE_PROCESSING) wait();
+            copyTo(contentId, picData);
+        } catch (InterruptedException iEx) {
+            Thread.currentThread().interrupt(); // The scan is cancelled. The file is skipped without hashes.
+        }
+        return false;
+    }
+
+    /**
+     * Passes the dimensions and hashes of picData on to the files with the same content. Must be called once picData, for which claimContent
+     * returned true, is processed. Also if it failed, so the other files don't wait forever. They get no hashes then.
+     *
+     * @param picData
+     */
+    synchronized void finishContent(PicData picData) {
+        int contentId = mContentSlots[findContentSlot(picData.getContentDigest())] - 1;
+        if (mContentStates[contentId] == S_STATE_PROCESSING) setContent(contentId, picData);
+        notifyAll();
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    /**
+     * Returns the slot of contentDigest in mContentSlots, or the empty slot where it would be added. The digest is a hash already, so its lower
+     * bits are used as they are.
+     *
+     * @param contentDigest
+     * @return
+     */
+    private int findContentSlot(long[] contentDigest) {
+        int mask = mContentSlots.length - 1;
+        for (int slot = (int) contentDigest[0] & mask; ; slot = (slot + 1) & mask) {
+            int contentId = mContentSlots[slot] - 1;
+            if (contentId < 0) return slot;
+            if (mContentDigests[contentId * 2] == contentDigest[0] && mContentDigests[contentId * 2 + 1] == contentDigest[1]) return slot;
+        }
+    }
+
+    private int addContent(int contentSlot, long[] contentDigest) {
+        if (mContentCount == mContentStates.length) growContents();
+        int contentId = mContentCount++;
+        mContentDigests[contentId * 2] = contentDigest[0];
+        mContentDigests[contentId * 2 + 1] = contentDigest[1];
+        mContentStates[contentId] = S_STATE_PROCESSING;
+
+        if (mContentCount * 2 > mContentSlots.length) rehashContents(); // Keeps the table at most half full, so the probe sequences stay short.
+        else mContentSlots[contentSlot] = contentId + 1;
+        return contentId;
+    }
+
+    private void setContent(int contentId, PicData picData) {
+        if (picData.getHash1024b() == null) {
+            mContentStates[contentId] = S_STATE_FAILED;
+            return;
+        }
+
+        mWidths[contentId] = picData.getPictureWidth();
+        mHeights[contentId] = picData.getPictureHeight();
+        mCanonicalHashes.ensureCapacity(contentId + 1);
+        mCanonicalHashes.set(contentId, picData.getCanonicalHash1024b());
+        mContentStates[contentId] = S_STATE_HASHED;
+    }
+
+    private void copyTo(int contentId, PicData picData) {
+        if (mContentStates[contentId] != S_STATE_HASHED) return;
+
+        picData.setPictureWidth(mWidths[contentId]);
+        picData.setPictureHeight(mHeights[contentId]);
+        if (picData.getContentDigest() == null) picData.setContentDigest(new long[] {mContentDigests[contentId * 2], mContentDigests[contentId * 2 + 1]});
+        long[][] hash1024b = new long[4][];
+        hash1024b[0] = mCanonicalHashes.get(contentId);
+        for (int orientation = 1; orientation < hash1024b.length; orientation++) hash1024b[orientation] = Hash1024b.rotate(hash1024b[orientation - 1]);
+        picData.setHash1024b(hash1024b);
+    }
+
+    private void growContents() {
+        int capacity = mContentStates.length * 2;
+        mContentDigests = Arrays.copyOf(mContentDigests, capacity * 2);
+        mContentStates = Arrays.copyOf(mContentStates, capacity);
+        mWidths = Arrays.copyOf(mWidths, capacity);
+        mHeights = Arrays.copyOf(mHeights, capacity);
+    }
+
+    private void rehashContents() {
+        mContentSlots = new int[mContentSlots.length * 2];
+        long[] contentDigest = new long[2];
+        for (int contentId = 0; contentId < mContentCount; contentId++) {
+            contentDigest[0] = mContentDigests[contentId * 2];
+            contentDigest[1] = mContentDigests[contentId * 2 + 1];
+            mContentSlots[findContentSlot(contentDigest)] = contentId + 1;
+        }
+    }
+
+    /**
+     * Returns the slot of fileKey in mFileKeys, or the empty slot where it would be added.
+     *
+     * @param fileKey
+     * @return
+     */
+    private int findFileSlot(Object fileKey) {
+        int mask = mFileKeys.length - 1;
+        int hash = fileKey.hashCode() * 0x9E3779B9; // Spreads file keys with a poor hashCode over the table.
+        for (int slot = (hash ^ hash >>> 16) & mask; ; slot = (slot + 1) & mask) {
+            if (mFileKeys[slot] == null || mFileKeys[slot].equals(fileKey)) return slot;
+        }
+    }
+
+    private void addFile(int slot, Object fileKey) {
+        mFileKeys[slot] = fileKey;
+        mFileContentIds[slot] = S_PROCESSING;
+        if (++mFileCount * 2 <= mFileKeys.length) return;
+
+        Object[] fileKeys = mFileKeys;
+        int[] fileContentIds = mFileContentIds;
+        mFileKeys = new Object[fileKeys.length * 2];
+        mFileContentIds = new int[fileKeys.length * 2];
+        for (int oldSlot = 0; oldSlot < fileKeys.length; oldSlot++) {
+            if (fileKeys[oldSlot] == null) continue;
+            int newSlot = findFileSlot(fileKeys[oldSlot]);
+            mFileKeys[newSlot] = fileKeys[oldSlot];
+            mFileContentIds[newSlot] = fileContentIds[oldSlot];
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,553 @@
+/**
+ * Class that decodes a baseline or progressive JPEG file to a picture of 1/8 of the original width and height. Each pixel of the result is the
+ * average of an 8x8 block of the original, which is exactly what the DC coefficient of a block describes. Only the DC coefficients are used, so
+ * there is no inverse DCT, no upsampling and only 1 color conversion per block. In progressive files the AC scans aren't even entropy decoded.
+ * Anything that isn't supported (arithmetic coding, lossless, 12 bit, CMYK, damaged files) throws an UnsupportedJpegException, after which the
+ * picture should be read by ImageIO instead.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+
+class JpegDcDecoder {
+
+    // Final class variables.
+    private static final int S_LOOKUP_BITS = 9;
+
+    // Variables related to the constructor.
+    private final byte[] mData;
+
+    // Variables filled by reading the headers.
+    private int mPos;
+    private int mWidth;
+    private int mHeight;
+    private boolean mProgressive;
+    private Component[] mComponents;
+    private int mMaxHorizontalSampling;
+    private int mMaxVerticalSampling;
+    private int mMcusPerLine;
+    private int mMcusPerColumn;
+    private int mRestartInterval;
+    private int mAdobeTransform = -1;
+    private final int[] mQuantizationDc = new int[4];
+    private final HuffmanTable[] mDcTables = new HuffmanTable[4];
+    private final HuffmanTable[] mAcTables = new HuffmanTable[4];
+
+    // Variables for reading the entropy coded data bit by bit.
+    private int mBitBuffer;
+    private int mBitCount;
+    private boolean mMarkerReached;
+
+
+
+    JpegDcDecoder(byte[] data) {
+        mData = data;
+    }
+
+
+
+    /**
+     * Returns true if the remaining bytes of data start with the JPEG start of image marker. The position of data isn't changed.
+     *
+     * @param data
+     * @return
+     */
+    static boolean isJpeg(ByteBuffer data) {
+        int start = data.position();
+        return data.remaining() > 3 && (data.get(start) & 0xFF) == 0xFF && (data.get(start + 1) & 0xFF) == 0xD8;
+    }
+
+    /**
+     * Reads the markers up to and including the start of frame, so the width and height of the picture are known before anything is decoded.
+     *
+     * @throws UnsupportedJpegException
+     */
+    void readHeader() throws UnsupportedJpegException {
+        try {
+            mPos = 2;
+            while (mComponents == null) {
+                int marker = readMarker();
+                if (marker == 0xC0 || marker == 0xC1 || marker == 0xC2) readStartOfFrame(marker == 0xC2);
+                else if (marker == 0xD8 || marker == 0xD9 || marker == 0xDA || marker >= 0xC3 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                    throw new UnsupportedJpegException(); // Other frame types, or a scan or end of image before the frame.
+                } else readMarkerSegment(marker);
+            }
+        } catch (ArrayIndexOutOfBoundsException aioobEx) {
+            throw new UnsupportedJpegException(); // Damaged file.
+        }
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Decodes the remaining markers and scans and returns a picture of 1/8 the original width and height. readHeader must be called first.
+     *
+     * @return
+     * @throws UnsupportedJpegException
+     */
+    BufferedImage decode() throws UnsupportedJpegException {
+        try {
+            boolean scanDecoded = false;
+            int marker;
+            while (mPos < mData.length && (marker = readMarker()) != 0xD9) {
+                if (marker == 0xDA) {
+                    readScan();
+                    scanDecoded = true;
+                } else if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                    throw new UnsupportedJpegException(); // A second frame isn't supported.
+                } else readMarkerSegment(marker);
+            }
+            if (!scanDecoded) throw new UnsupportedJpegException();
+        } catch (ArrayIndexOutOfBoundsException aioobEx) {
+            throw new UnsupportedJpegException(); // Damaged file.
+        }
+
+        return createPicture();
+    }
+
+    /**
+     * Returns the next marker and positions mPos right after it. Fill bytes are skipped.
+     *
+     * @return
+     * @throws UnsupportedJpegException
+     */
+    private int readMarker() throws UnsupportedJpegException {
+        if ((mData[mPos] & 0xFF) != 0xFF) throw new UnsupportedJpegException();
+        while ((mData[mPos] & 0xFF) == 0xFF) mPos++;
+        return mData[mPos++] & 0xFF;
+    }
+
+    private int readUnsignedShort() {
+        int value = ((mData[mPos] & 0xFF) << 8) | (mData[mPos + 1] & 0xFF);
+        mPos += 2;
+        return value;
+    }
+
+    /**
+     * Reads the tables and settings this decoder needs from a marker segment and skips all other marker segments.
+     *
+     * @param marker
+     * @throws UnsupportedJpegException
+     */
+    private void readMarkerSegment(int marker) throws UnsupportedJpegException {
+        if (marker >= 0xD0 && marker <= 0xD7 || marker == 0x01) return; // Markers without a segment.
+
+        int segmentStart = mPos;
+        int segmentEnd = segmentStart + readUnsignedShort();
+        if (segmentEnd > mData.length) throw new UnsupportedJpegException();
+
+        if (marker == 0xC4) {
+            while (mPos < segmentEnd) {
+                int tableClassAndId = mData[mPos++] & 0xFF;
+                HuffmanTable huffmanTable = new HuffmanTable(mData, mPos);
+                mPos += 16 + huffmanTable.mSymbolCount;
+                if ((tableClassAndId >> 4) == 0) mDcTables[tableClassAndId & 3] = huffmanTable;
+                else mAcTables[tableClassAndId & 3] = huffmanTable;
+            }
+        } else if (marker == 0xDB) {
+            while (mPos < segmentEnd) {
+                int precisionAndId = mData[mPos++] & 0xFF;
+                boolean sixteenBit = (precisionAndId >> 4) != 0;
+                mQuantizationDc[precisionAndId & 3] = sixteenBit ? ((mData[mPos] & 0xFF) << 8) | (mData[mPos + 1] & 0xFF) : mData[mPos] & 0xFF; // Only the first value (DC) is needed.
+                mPos += sixteenBit ? 128 : 64;
+            }
+        } else if (marker == 0xDD) {
+            mRestartInterval = readUnsignedShort();
+        } else if (marker == 0xEE && segmentEnd - segmentStart >= 14 && mData[mPos] == 'A' && mData[mPos + 1] == 'd' && mData[mPos + 2] == 'o' && mData[mPos + 3] == 'b' && mData[mPos + 4] == 'e') {
+            mAdobeTransform = mData[segmentStart + 13] & 0xFF;
+        }
+
+        mPos = segmentEnd;
+    }
+
+    /**
+     * Reads the start of frame with the size of the picture and the sampling of each component.
+     *
+     * @param progressive
+     * @throws UnsupportedJpegException
+     */
+    private void readStartOfFrame(boolean progressive) throws UnsupportedJpegException {
+        int segmentEnd = mPos + readUnsignedShort();
+        int precision = mData[mPos++] & 0xFF;
+        mHeight = readUnsignedShort();
+        mWidth = readUnsignedShort();
+        int componentCount = mData[mPos++] & 0xFF;
+        if (precision != 8 || mHeight == 0 || mWidth == 0 || (componentCount != 1 && componentCount != 3)) throw new UnsupportedJpegException();
+
+        mProgressive = progressive;
+        mComponents = new Component[componentCount];
+        for (int i = 0; i < componentCount; i++) {
+            Component component = new Component();
+            component.mId = mData[mPos++] & 0xFF;
+            int sampling = mData[mPos++] & 0xFF;
+            component.mHorizontalSampling = sampling >> 4;
+            component.mVerticalSampling = sampling & 15;
+            component.mQuantizationTableId = mData[mPos++] & 3;
+            if (component.mHorizontalSampling < 1 || component.mHorizontalSampling > 4 || component.mVerticalSampling < 1 || component.mVerticalSampling > 4) throw new UnsupportedJpegException();
+            mMaxHorizontalSampling = Math.max(mMaxHorizontalSampling, component.mHorizontalSampling);
+            mMaxVerticalSampling = Math.max(mMaxVerticalSampling, component.mVerticalSampling);
+            mComponents[i] = component;
+        }
+
+        mMcusPerLine = ceilDiv(mWidth, 8 * mMaxHorizontalSampling);
+        mMcusPerColumn = ceilDiv(mHeight, 8 * mMaxVerticalSampling);
+        for (Component component : mComponents) {
+            component.mBlocksPerLine = mMcusPerLine * component.mHorizontalSampling;
+            component.mBlocksPerColumn = mMcusPerColumn * component.mVerticalSampling;
+            component.mDc = new int[component.mBlocksPerLine * component.mBlocksPerColumn];
+            component.mUsedBlocksPerLine = ceilDiv(ceilDiv(mWidth * component.mHorizontalSampling, mMaxHorizontalSampling), 8);
+            component.mUsedBlocksPerColumn = ceilDiv(ceilDiv(mHeight * component.mVerticalSampling, mMaxVerticalSampling), 8);
+        }
+
+        mPos = segmentEnd;
+    }
+
+    /**
+     * Reads a scan header and decodes the DC coefficients of the scan. Progressive AC scans are skipped without decoding.
+     *
+     * @throws UnsupportedJpegException
+     */
+    private void readScan() throws UnsupportedJpegException {
+        int segmentEnd = mPos + readUnsignedShort();
+        int componentCount = mData[mPos++] & 0xFF;
+        Component[] scanComponents = new Component[componentCount];
+        for (int i = 0; i < componentCount; i++) {
+            int id = mData[mPos++] & 0xFF;
+            int tableIds = mData[mPos++] & 0xFF;
+            for (Component component : mComponents) {
+                if (component.mId == id) scanComponents[i] = component;
+            }
+            if (scanComponents[i] == null) throw new UnsupportedJpegException();
+            scanComponents[i].mDcTable = mDcTables[tableIds >> 4];
+            scanComponents[i].mAcTable = mAcTables[tableIds & 15];
+            if (!scanComponents[i].mQuantizationKnown) {
+                scanComponents[i].mQuantizationDc = mQuantizationDc[scanComponents[i].mQuantizationTableId];
+                scanComponents[i].mQuantizationKnown = true;
+            }
+        }
+        int spectralStart = mData[mPos++] & 0xFF;
+        mPos++; // Spectral end isn't needed.
+        int approximation = mData[mPos++] & 0xFF;
+        int approximationHigh = approximation >> 4;
+        int approximationLow = approximation & 15;
+        mPos = segmentEnd;
+
+        if (mProgressive && spectralStart != 0) { // AC scans of progressive files don't contain anything this decoder needs.
+            skipEntropyCodedData();
+            return;
+        }
+
+        for (Component component : scanComponents) {
+            if (component.mDcTable == null && !(mProgressive && approximationHigh != 0)) throw new UnsupportedJpegException();
+            if (component.mAcTable == null && !mProgressive) throw new UnsupportedJpegException();
+            component.mPredictor = 0;
+        }
+
+        resetBitReader();
+        int restartsToGo = mRestartInterval;
+
+        if (componentCount == 1) { // A scan with a single component isn't interleaved and has its blocks in plain raster order.
+            Component component = scanComponents[0];
+            for (int blockRow = 0; blockRow < component.mUsedBlocksPerColumn; blockRow++) {
+                for (int blockColumn = 0; blockColumn < component.mUsedBlocksPerLine; blockColumn++) {
+                    if (mRestartInterval > 0 && restartsToGo-- == 0) {
+                        readRestartMarker(scanComponents);
+                        restartsToGo = mRestartInterval - 1;
+                    }
+                    decodeBlock(component, blockRow * component.mBlocksPerLine + blockColumn, approximationHigh, approximationLow);
+                }
+            }
+        } else {
+            for (int mcuRow = 0; mcuRow < mMcusPerColumn; mcuRow++) {
+                for (int mcuColumn = 0; mcuColumn < mMcusPerLine; mcuColumn++) {
+                    if (mRestartInterval > 0 && restartsToGo-- == 0) {
+                        readRestartMarker(scanComponents);
+                        restartsToGo = mRestartInterval - 1;
+                    }
+                    for (Component component : scanComponents) {
+                        for (int v = 0; v < component.mVerticalSampling; v++) {
+                            int blockRowOffset = (mcuRow * component.mVerticalSampling + v) * component.mBlocksPerLine + mcuColumn * component.mHorizontalSampling;
+                            for (int h = 0; h < component.mHorizontalSampling; h++) {
+                                decodeBlock(component, blockRowOffset + h, approximationHigh, approximationLow);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        skipEntropyCodedData();
+    }
+
+    /**
+     * Decodes the DC coefficient of a single block. For baseline files the AC coefficients of the block still have to be read to get to the next
+     * block, but their values are thrown away.
+     *
+     * @param component
+     * @param block
+     * @param approximationHigh
+     * @param approximationLow
+     * @throws UnsupportedJpegException
+     */
+    private void decodeBlock(Component component, int block, int approximationHigh, int approximationLow) throws UnsupportedJpegException {
+        if (!mProgressive) {
+            component.mPredictor += receiveExtend(decodeHuffman(component.mDcTable));
+            component.mDc[block] = component.mPredictor;
+
+            for (int k = 1; k < 64; k++) {
+                int runAndSize = decodeHuffman(component.mAcTable);
+                int size = runAndSize & 15;
+                int run = runAndSize >> 4;
+                if (size != 0) {
+                    k += run;
+                    readBits(size);
+                } else if (run == 15) k += 15;
+                else break;
+            }
+        } else if (approximationHigh == 0) { // First DC scan of a progressive file.
+            component.mPredictor += receiveExtend(decodeHuffman(component.mDcTable));
+            component.mDc[block] = component.mPredictor << approximationLow;
+        } else { // DC refinement scan of a progressive file adds a single bit.
+            if (readBits(1) != 0) component.mDc[block] |= 1 << approximationLow;
+        }
+    }
+
+    /**
+     * Converts the DC coefficients to a picture with a pixel for each 8x8 block. The picture has the same BGR layout as ImageIO uses for color
+     * JPEG files, so the rest of the pre-processing doesn't need to know where the picture came from.
+     *
+     * @return
+     */
+    private BufferedImage createPicture() {
+        int width = ceilDiv(mWidth, 8);
+        int height = ceilDiv(mHeight, 8);
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] pixels = ((DataBufferByte) bufferedImage.getRaster().getDataBuffer()).getData();
+
+        boolean rgb = mComponents.length == 3 && (mAdobeTransform == 0 || (mAdobeTransform == -1 && mComponents[0].mId == 'R' && mComponents[1].mId == 'G' && mComponents[2].mId == 'B'));
+        int[][] componentRows = new int[mComponents.length][width];
+
+        for (int y = 0, pixel = 0; y < height; y++) {
+            for (int c = 0; c < mComponents.length; c++) {
+                Component component = mComponents[c];
+                int blockRowOffset = (y * component.mVerticalSampling / mMaxVerticalSampling) * component.mBlocksPerLine;
+                for (int x = 0; x < width; x++) {
+                    int dc = component.mDc[blockRowOffset + x * component.mHorizontalSampling / mMaxHorizontalSampling];
+                    componentRows[c][x] = clamp(((dc * component.mQuantizationDc) >> 3) + 128); // The DC coefficient is 8 times the average of the block.
+                }
+            }
+
+            for (int x = 0; x < width; x++, pixel += 3) {
+                int red, green, blue;
+                if (mComponents.length == 1) {
+                    red = green = blue = componentRows[0][x];
+                } else if (rgb) {
+                    red = componentRows[0][x];
+                    green = componentRows[1][x];
+                    blue = componentRows[2][x];
+                } else { // YCbCr to RGB as defined by JFIF, in fixed point with 16 fraction bits.
+                    int luma = componentRows[0][x] << 16;
+                    int cb = componentRows[1][x] - 128;
+                    int cr = componentRows[2][x] - 128;
+                    red = clamp((luma + 91881 * cr + 32768) >> 16);
+                    green = clamp((luma - 22554 * cb - 46802 * cr + 32768) >> 16);
+                    blue = clamp((luma + 116130 * cb + 32768) >> 16);
+                }
+                pixels[pixel] = (byte) blue;
+                pixels[pixel + 1] = (byte) green;
+                pixels[pixel + 2] = (byte) red;
+            }
+        }
+
+        return bufferedImage;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods for reading the entropy coded data.
+
+    private void resetBitReader() {
+        mBitBuffer = 0;
+        mBitCount = 0;
+        mMarkerReached = false;
+    }
+
+    /**
+     * Fills mBitBuffer up to at least 25 bits. Stuffed zero bytes are removed. When a marker is reached, zero bits are fed and mPos stays at the
+     * marker.
+     */
+    private void fillBitBuffer() {
+        while (mBitCount <= 24) {
+            int value = 0;
+            if (!mMarkerReached && mPos < mData.length) {
+                value = mData[mPos] & 0xFF;
+                if (value != 0xFF) mPos++;
+                else if (mPos + 1 < mData.length && mData[mPos + 1] == 0) mPos += 2;
+                else {
+                    mMarkerReached = true;
+                    value = 0;
+                }
+            }
+            mBitBuffer |= value << (24 - mBitCount);
+            mBitCount += 8;
+        }
+    }
+
+    private int readBits(int amount) {
+        fillBitBuffer();
+        int value = mBitBuffer >>> (32 - amount);
+        mBitBuffer <<= amount;
+        mBitCount -= amount;
+        return value;
+    }
+
+    /**
+     * Reads amount bits and converts them to a signed value as described in the JPEG specification (F.2.2.1).
+     *
+     * @param amount
+     * @return
+     * @throws UnsupportedJpegException
+     */
+    private int receiveExtend(int amount) throws UnsupportedJpegException {
+        if (amount == 0) return 0;
+        if (amount > 11) throw new UnsupportedJpegException(); // DC differences of 8 bit pictures never need more bits.
+        int value = readBits(amount);
+        if (value < (1 << (amount - 1))) value += (-1 << amount) + 1;
+        return value;
+    }
+
+    private int decodeHuffman(HuffmanTable huffmanTable) throws UnsupportedJpegException {
+        fillBitBuffer();
+        int lookup = huffmanTable.mLookup[mBitBuffer >>> (32 - S_LOOKUP_BITS)];
+        if (lookup != 0) {
+            int length = lookup >> 8;
+            mBitBuffer <<= length;
+            mBitCount -= length;
+            return lookup & 0xFF;
+        }
+
+        for (int length = S_LOOKUP_BITS + 1; length <= 16; length++) {
+            int code = mBitBuffer >>> (32 - length);
+            if (code <= huffmanTable.mMaxCode[length]) {
+                mBitBuffer <<= length;
+                mBitCount -= length;
+                return huffmanTable.mSymbols[huffmanTable.mValueOffset[length] + code];
+            }
+        }
+
+        throw new UnsupportedJpegException(); // Invalid code, so the file is damaged.
+    }
+
+    /**
+     * Expects a restart marker at the current position. The bit reader and the DC predictions are reset after it.
+     *
+     * @param scanComponents
+     * @throws UnsupportedJpegException
+     */
+    private void readRestartMarker(Component[] scanComponents) throws UnsupportedJpegException {
+        resetBitReader();
+        if (mPos + 1 >= mData.length || (mData[mPos] & 0xFF) != 0xFF || (mData[mPos + 1] & 0xF8) != 0xD0) throw new UnsupportedJpegException();
+        mPos += 2;
+        for (Component component : scanComponents) component.mPredictor = 0;
+    }
+
+    /**
+     * Moves mPos to the next marker that isn't a restart marker, which is the marker that follows the entropy coded data of a scan.
+     */
+    private void skipEntropyCodedData() {
+        while (mPos + 1 < mData.length) {
+            if ((mData[mPos] & 0xFF) == 0xFF) {
+                int next = mData[mPos + 1] & 0xFF;
+                if (next != 0 && next != 0xFF && (next & 0xF8) != 0xD0) return;
+            }
+            mPos++;
+        }
+        mPos = mData.length;
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper classes.
+
+    /**
+     * A single color component of the frame with the DC coefficients of all its blocks.
+     */
+    private static class Component {
+        private int mId;
+        private int mHorizontalSampling;
+        private int mVerticalSampling;
+        private int mQuantizationTableId;
+        private int mQuantizationDc;
+        private boolean mQuantizationKnown;
+        private int mBlocksPerLine;
+        private int mBlocksPerColumn;
+        private int mUsedBlocksPerLine;
+        private int mUsedBlocksPerColumn;
+        private int[] mDc;
+        private int mPredictor;
+        private HuffmanTable mDcTable;
+        private HuffmanTable mAcTable;
+    }
+
+    /**
+     * A Huffman table with a lookup table for codes up to S_LOOKUP_BITS bits. Longer codes are decoded with the maximum code per length.
+     */
+    private static class HuffmanTable {
+        private final int mSymbolCount;
+        private final int[] mSymbols;
+        private final int[] mMaxCode = new int[17];
+        private final int[] mValueOffset = new int[17];
+        private final int[] mLookup = new int[1 << S_LOOKUP_BITS];
+
+        private HuffmanTable(byte[] data, int offset) throws UnsupportedJpegException {
+            int[] counts = new int[17];
+            int symbolCount = 0;
+            for (int length = 1; length <= 16; length++) {
+                counts[length] = data[offset + length - 1] & 0xFF;
+                symbolCount += counts[length];
+            }
+            if (symbolCount > 256) throw new UnsupportedJpegException();
+
+            mSymbolCount = symbolCount;
+            mSymbols = new int[symbolCount];
+            for (int i = 0; i < symbolCount; i++) mSymbols[i] = data[offset + 16 + i] & 0xFF;
+
+            int code = 0;
+            int symbol = 0;
+            for (int length = 1; length <= 16; length++) {
+                mValueOffset[length] = symbol - code;
+                for (int i = 0; i < counts[length]; i++, code++, symbol++) {
+                    if (length <= S_LOOKUP_BITS) {
+                        int shift = S_LOOKUP_BITS - length;
+                        for (int fill = 0; fill < (1 << shift); fill++) mLookup[(code << shift) | fill] = (length << 8) | mSymbols[symbol];
+                    }
+                }
+                mMaxCode[length] = counts[length] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,320 @@
+/**
+ * Class that converts a BufferedImage to luminosity values one row at a time. A kernel specialized for the layout of the raster is selected once
+ * per picture by forPicture, so the common layouts are read straight from their data buffer. Layouts without a specialized kernel fall back to
+ * BufferedImage.getRGB. Every kernel produces the same luminosity as calcLuminosity does for the red, green and blue value of a pixel. The kernels
+ * for a ComponentSampleModel read each band from its own bank, so they handle interleaved and banded rasters alike.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+
+abstract class LuminosityKernel {
+
+    /**
+     * Selects the kernel that fits the raster of bufferedImage.
+     *
+     * @param bufferedImage
+     * @return
+     */
+    static LuminosityKernel forPicture(BufferedImage bufferedImage) {
+        WritableRaster raster = bufferedImage.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        ColorModel colorModel = bufferedImage.getColorModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int colorSpaceType = colorModel.getColorSpace().getType();
+
+        if (colorModel instanceof IndexColorModel) {
+            if (dataBuffer instanceof DataBufferByte && sampleModel instanceof MultiPixelPackedSampleModel) return new PackedIndexKernel(bufferedImage);
+            if (dataBuffer instanceof DataBufferByte && sampleModel instanceof ComponentSampleModel) return new ByteIndexKernel(bufferedImage);
+        } else if (colorModel instanceof ComponentColorModel && sampleModel instanceof ComponentSampleModel) {
+            if (colorSpaceType == ColorSpace.TYPE_GRAY && colorModel.getNumColorComponents() == 1) {
+                if (dataBuffer instanceof DataBufferByte) return new ByteGreyKernel(bufferedImage);
+                if (dataBuffer instanceof DataBufferUShort) return new UShortGreyKernel(bufferedImage);
+            } else if (colorModel.getColorSpace().isCS_sRGB() && !colorModel.isAlphaPremultiplied() && dataBuffer instanceof DataBufferByte) return new ByteRgbKernel(bufferedImage);
+        } else if (colorModel instanceof DirectColorModel && colorModel.getColorSpace().isCS_sRGB() && !colorModel.isAlphaPremultiplied() && dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel) {
+            DirectColorModel directColorModel = (DirectColorModel) colorModel;
+            if (Integer.bitCount(directColorModel.getRedMask()) == 8 && Integer.bitCount(directColorModel.getGreenMask()) == 8 && Integer.bitCount(directColorModel.getBlueMask()) == 8) return new IntRgbKernel(bufferedImage);
+        }
+
+        return new GenericKernel(bufferedImage);
+    }
+
+    /**
+     * Returns the luminosity of a single pixel. The largest of the three channels wins, where green counts 256 times and red 65536 times as heavy
+     * as blue.
+     *
+     * @param red
+     * @param green
+     * @param blue
+     * @return
+     */
+    static int calcLuminosity(int red, int green, int blue) {
+        int value1 = blue;
+        int value2 = green << 8;
+        int value3 = red << 16;
+        int value;
+        if (value1 > value2) value = value1;
+        else value = value2;
+        if (value3 > value) value = value3;
+        return value;
+    }
+
+    /**
+     * Writes the luminosity of each pixel of row y to row. The row array must hold at least the width of the picture.
+     *
+     * @param y
+     * @param row
+     */
+    abstract void readRow(int y, int[] row);
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods for the kernels.
+
+    /**
+     * Returns the position in the bank of band of the first sample of band in row y.
+     *
+     * @param raster
+     * @param y
+     * @param band
+     * @return
+     */
+    private static int calcRowOffset(Raster raster, int y, int band) {
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        int bankOffset = raster.getDataBuffer().getOffsets()[sampleModel.getBankIndices()[band]];
+        return bankOffset + sampleModel.getOffset(-raster.getSampleModelTranslateX(), y - raster.getSampleModelTranslateY(), band);
+    }
+
+    /**
+     * Returns the bank of raster that holds band.
+     *
+     * @param raster
+     * @param band
+     * @return
+     */
+    private static byte[] getByteBank(Raster raster, int band) {
+        return ((DataBufferByte) raster.getDataBuffer()).getData(((ComponentSampleModel) raster.getSampleModel()).getBankIndices()[band]);
+    }
+
+    /**
+     * Returns the luminosity of each palette entry, so indexed pictures only need a lookup per pixel.
+     *
+     * @param indexColorModel
+     * @return
+     */
+    private static int[] calcPaletteLuminosity(IndexColorModel indexColorModel) {
+        int[] paletteLuminosity = new int[256];
+        for (int i = 0; i < indexColorModel.getMapSize(); i++) {
+            paletteLuminosity[i] = calcLuminosity(indexColorModel.getRed(i), indexColorModel.getGreen(i), indexColorModel.getBlue(i));
+        }
+        return paletteLuminosity;
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // The kernels.
+
+    /**
+     * 8 bit RGB in any band order, with or without alpha, interleaved or banded. This covers BGR and ABGR as decoded by ImageIO and JpegDcDecoder.
+     */
+    private static class ByteRgbKernel extends LuminosityKernel {
+        private final Raster mRaster;
+        private final byte[] mRedData;
+        private final byte[] mGreenData;
+        private final byte[] mBlueData;
+        private final int mWidth;
+        private final int mPixelStride;
+
+        private ByteRgbKernel(BufferedImage bufferedImage) {
+            mRaster = bufferedImage.getRaster();
+            mRedData = getByteBank(mRaster, 0);
+            mGreenData = getByteBank(mRaster, 1);
+            mBlueData = getByteBank(mRaster, 2);
+            mWidth = bufferedImage.getWidth();
+            mPixelStride = ((ComponentSampleModel) mRaster.getSampleModel()).getPixelStride();
+        }
+
+        @Override
+        void readRow(int y, int[] row) {
+            int red = calcRowOffset(mRaster, y, 0);
+            int green = calcRowOffset(mRaster, y, 1);
+            int blue = calcRowOffset(mRaster, y, 2);
+            for (int x = 0; x < mWidth; x++, red += mPixelStride, green += mPixelStride, blue += mPixelStride) {
+                row[x] = calcLuminosity(mRedData[red] & 0xFF, mGreenData[green] & 0xFF, mBlueData[blue] & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * 8 bit RGB packed in an int per pixel, like INT_RGB, INT_ARGB and INT_BGR.
+     */
+    private static class IntRgbKernel extends LuminosityKernel {
+        private final Raster mRaster;
+        private final int[] mData;
+        private final int mWidth;
+        private final int mScanlineStride;
+        private final int mRedShift;
+        private final int mGreenShift;
+        private final int mBlueShift;
+
+        private IntRgbKernel(BufferedImage bufferedImage) {
+            mRaster = bufferedImage.getRaster();
+            mData = ((DataBufferInt) mRaster.getDataBuffer()).getData();
+            mWidth = bufferedImage.getWidth();
+            mScanlineStride = ((SinglePixelPackedSampleModel) mRaster.getSampleModel()).getScanlineStride();
+            DirectColorModel colorModel = (DirectColorModel) bufferedImage.getColorModel();
+            mRedShift = Integer.numberOfTrailingZeros(colorModel.getRedMask());
+            mGreenShift = Integer.numberOfTrailingZeros(colorModel.getGreenMask());
+            mBlueShift = Integer.numberOfTrailingZeros(colorModel.getBlueMask());
+        }
+
+        @Override
+        void readRow(int y, int[] row) {
+            int offset = mRaster.getDataBuffer().getOffset() - mRaster.getSampleModelTranslateX() + (y - mRaster.getSampleModelTranslateY()) * mScanlineStride;
+            for (int x = 0; x < mWidth; x++) {
+                int pixel = mData[offset + x];
+                row[x] = calcLuminosity((pixel >>> mRedShift) & 0xFF, (pixel >>> mGreenShift) & 0xFF, (pixel >>> mBlueShift) & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * 8 bit grey, with or without alpha.
+     */
+    private static class ByteGreyKernel extends LuminosityKernel {
+        private final Raster mRaster;
+        private final byte[] mData;
+        private final int mWidth;
+        private final int mPixelStride;
+
+        private ByteGreyKernel(BufferedImage bufferedImage) {
+            mRaster = bufferedImage.getRaster();
+            mData = getByteBank(mRaster, 0);
+            mWidth = bufferedImage.getWidth();
+            mPixelStride = ((ComponentSampleModel) mRaster.getSampleModel()).getPixelStride();
+        }
+
+        @Override
+        void readRow(int y, int[] row) {
+            for (int x = 0, pixel = calcRowOffset(mRaster, y, 0); x < mWidth; x++, pixel += mPixelStride) {
+                int grey = mData[pixel] & 0xFF;
+                row[x] = calcLuminosity(grey, grey, grey);
+            }
+        }
+    }
+
+    /**
+     * 16 bit grey, with or without alpha. Only the 8 most significant bits are used, like the other kernels have.
+     */
+    private static class UShortGreyKernel extends LuminosityKernel {
+        private final Raster mRaster;
+        private final short[] mData;
+        private final int mWidth;
+        private final int mPixelStride;
+
+        private UShortGreyKernel(BufferedImage bufferedImage) {
+            mRaster = bufferedImage.getRaster();
+            mData = ((DataBufferUShort) mRaster.getDataBuffer()).getData(((ComponentSampleModel) mRaster.getSampleModel()).getBankIndices()[0]);
+            mWidth = bufferedImage.getWidth();
+            mPixelStride = ((ComponentSampleModel) mRaster.getSampleModel()).getPixelStride();
+        }
+
+        @Override
+        void readRow(int y, int[] row) {
+            for (int x = 0, pixel = calcRowOffset(mRaster, y, 0); x < mWidth; x++, pixel += mPixelStride) {
+                int grey = (mData[pixel] & 0xFFFF) >>> 8;
+                row[x] = calcLuminosity(grey, grey, grey);
+            }
+        }
+    }
+
+    /**
+     * Indexed color with a byte per pixel.
+     */
+    private static class ByteIndexKernel extends LuminosityKernel {
+        private final Raster mRaster;
+        private final byte[] mData;
+        private final int mWidth;
+        private final int mPixelStride;
+        private final int[] mPaletteLuminosity;
+
+        private ByteIndexKernel(BufferedImage bufferedImage) {
+            mRaster = bufferedImage.getRaster();
+            mData = getByteBank(mRaster, 0);
+            mWidth = bufferedImage.getWidth();
+            mPixelStride = ((ComponentSampleModel) mRaster.getSampleModel()).getPixelStride();
+            mPaletteLuminosity = calcPaletteLuminosity((IndexColorModel) bufferedImage.getColorModel());
+        }
+
+        @Override
+        void readRow(int y, int[] row) {
+            for (int x = 0, pixel = calcRowOffset(mRaster, y, 0); x < mWidth; x++, pixel += mPixelStride) {
+                row[x] = mPaletteLuminosity[mData[pixel] & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * Indexed color with 1, 2 or 4 bits per pixel packed in bytes, like BYTE_BINARY.
+     */
+    private static class PackedIndexKernel extends LuminosityKernel {
+        private final Raster mRaster;
+        private final byte[] mData;
+        private final int mWidth;
+        private final int mBitsPerPixel;
+        private final int mScanlineStride;
+        private final int mDataBitOffset;
+        private final int[] mPaletteLuminosity;
+
+        private PackedIndexKernel(BufferedImage bufferedImage) {
+            mRaster = bufferedImage.getRaster();
+            mData = ((DataBufferByte) mRaster.getDataBuffer()).getData();
+            mWidth = bufferedImage.getWidth();
+            MultiPixelPackedSampleModel sampleModel = (MultiPixelPackedSampleModel) mRaster.getSampleModel();
+            mBitsPerPixel = sampleModel.getPixelBitStride();
+            mScanlineStride = sampleModel.getScanlineStride();
+            mDataBitOffset = sampleModel.getDataBitOffset();
+            mPaletteLuminosity = calcPaletteLuminosity((IndexColorModel) bufferedImage.getColorModel());
+        }
+
+        @Override
+        void readRow(int y, int[] row) {
+            int rowOffset = mRaster.getDataBuffer().getOffset() + (y - mRaster.getSampleModelTranslateY()) * mScanlineStride;
+            int mask = (1 << mBitsPerPixel) - 1;
+            for (int x = 0, bit = mDataBitOffset - mRaster.getSampleModelTranslateX() * mBitsPerPixel; x < mWidth; x++, bit += mBitsPerPixel) {
+                int index = ((mData[rowOffset + (bit >> 3)] & 0xFF) >> (8 - (bit & 7) - mBitsPerPixel)) & mask;
+                row[x] = mPaletteLuminosity[index];
+            }
+        }
+    }
+
+    /**
+     * Any other layout, like 16 bit RGB, premultiplied alpha or other color spaces. BufferedImage.getRGB converts it to 8 bit sRGB first, which is slower.
+     */
+    static class GenericKernel extends LuminosityKernel {
+        private final BufferedImage mBufferedImage;
+        private final int[] mRgbRow;
+
+        GenericKernel(BufferedImage bufferedImage) {
+            mBufferedImage = bufferedImage;
+            mRgbRow = new int[bufferedImage.getWidth()];
+        }
+
+        @Override
+        void readRow(int y, int[] row) {
+            mBufferedImage.getRGB(0, y, mRgbRow.length, 1, mRgbRow, 0, mRgbRow.length);
+            for (int x = 0; x < mRgbRow.length; x++) {
+                int rgb = mRgbRow[x];
+                row[x] = calcLuminosity((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            }
+        }
+    }
+}
\ No newline at end of file
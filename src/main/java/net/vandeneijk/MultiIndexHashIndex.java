@@ -0,0 +1,124 @@
+/**
+ * Class that indexes 1024 bit hashes for a fixed maximum distance with multi-index hashing. Each hash is split into maxDistance + 1 disjoint
+ * substrings. Two hashes that differ in at most maxDistance bits can't differ in every substring, so they match exactly in at least one of them
+ * (the pigeonhole principle). Each substring position gets its own table, and only the hashes found by an exact lookup in one of the tables are
+ * compared in full.
+ *
+ * For maxDistance 0 there is a single table over the entire canonical hash, so an exact lookup only needs the canonical hash of the query.
+ *
+ * A table is a single sorted array of longs with the 32 bit key of the substring in the upper half and the id of the picture in the lower half,
+ * so the memory used is 8 bytes per picture per substring. PicsProcessor therefore only creates this index when the tables fit in a share of the
+ * heap. A lookup is a binary search. The hashes themselves are only read from the HashStore. The tables are built in parallel.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+class MultiIndexHashIndex implements HashIndex {
+
+    // Variables related to the constructor.
+    private final HashStore mHashStore;
+    private final int mMaxDistance;
+    private final long[][] mTables;
+
+
+
+    /**
+     * Creates an index over all pictures in hashStore that answers queries up to maxDistance. hashStore must be sorted.
+     *
+     * @param hashStore
+     * @param maxDistance
+     */
+    MultiIndexHashIndex(HashStore hashStore, int maxDistance) {
+        mHashStore = hashStore;
+        mMaxDistance = maxDistance;
+
+        mTables = new long[maxDistance + 1][];
+        IntStream.range(0, mTables.length).parallel().forEach(this::buildTable);
+    }
+
+
+
+    /**
+     * Returns the amount of bytes the tables of an index over size pictures for maxDistance take.
+     *
+     * @param size
+     * @param maxDistance
+     * @return
+     */
+    static long calcTableBytes(int size, int maxDistance) {
+        return (maxDistance + 1L) * size * Long.BYTES;
+    }
+
+
+    /**
+     * {@inheritDoc} maxDistance may not be larger than the maxDistance this index was created for.
+     */
+    @Override
+    public void findWithinDistance(long[][] hashes, int maxDistance, IntConsumer result) {
+        if (maxDistance > mMaxDistance) throw new IllegalArgumentException("maxDistance " + maxDistance + " exceeds " + mMaxDistance);
+
+        for (long[] hash : hashes) findWithinDistance(hash, maxDistance, result);
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    private void findWithinDistance(long[] hash, int maxDistance, IntConsumer result) {
+        for (int substring = 0; substring < mTables.length; substring++) {
+            long[] table = mTables[substring];
+            long key = (long) calcSubstringKey(hash, substring) << 32;
+            int index = Arrays.binarySearch(table, key); // Finds the first entry with this key. That is either the entry of id 0 or the insertion point.
+            if (index < 0) index = -index - 1;
+
+            for (; index < table.length && (table[index] & 0xFFFFFFFF00000000L) == key; index++) {
+                int id = (int) table[index];
+                if (mHashStore.calcDistance(hash, id, maxDistance) <= maxDistance) result.accept(id);
+            }
+        }
+    }
+
+    private void buildTable(int substring) {
+        long[] table = new long[mHashStore.size()];
+        for (int id = 0; id < table.length; id++) {
+            table[id] = ((long) calcSubstringKey(mHashStore.getCanonicalHash1024b(id), substring) << 32) | id;
+        }
+        Arrays.sort(table);
+        mTables[substring] = table;
+    }
+
+    /**
+     * Returns a 32 bit key for a substring of hash. Substring i covers the bits from i * 1024 / (maxDistance + 1) up to
+     * (i + 1) * 1024 / (maxDistance + 1). Substrings longer than 32 bits are mixed down to 32 bits, which can only add candidates.
+     *
+     * @param hash
+     * @param substring
+     * @return
+     */
+    private int calcSubstringKey(long[] hash, int substring) {
+        int start = substring * Hash1024b.BITS / mTables.length;
+        int end = (substring + 1) * Hash1024b.BITS / mTables.length;
+
+        long key = 0;
+        for (int bit = start; bit < end; bit += Long.SIZE) {
+            int length = Math.min(Long.SIZE, end - bit);
+            int word = bit >>> 6;
+            int shift = bit & 63;
+            long bits = hash[word] >>> shift;
+            if (shift != 0 && shift + length > Long.SIZE) bits |= hash[word + 1] << (Long.SIZE - shift);
+            if (length < Long.SIZE) bits &= (1L << length) - 1;
+
+            key = (key ^ bits) * 0x9E3779B97F4A7C15L;
+            key ^= key >>> 32;
+        }
+        return (int) key;
+    }
+}
\ No newline at end of file
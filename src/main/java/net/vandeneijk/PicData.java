@@ -1,5 +1,5 @@
 /**
- * Class that contains information for a single picture.
+ * Class that contains information for a single picture. The getters of the information in the results are public, for users of DuplicateFinder.
  *
  * @author Robert van den Eijk
  */
@@ -9,8 +9,6 @@ package net.vandeneijk;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 public class PicData {
@@ -27,8 +25,13 @@ public class PicData {
     private int mPictureWidth;
     private int mPictureHeight;
     private long mPictureFileSize;
+    private long mPictureLastModified;
+    private Object mFileKey; // See BasicFileAttributes.fileKey. The same for each path to the same physical file. Null if the file system has none.
+    private long[] mContentDigest; // See ContentDigest.
     private double mAccuracy;
-    private List<List<Byte>> mHash1024b = new ArrayList<>();
+    private long[][] mHash1024b; // One packed 1024 bit hash for each of the 4 orientations. See Hash1024b.
+    private short mHash1024bAmountOfOnes;
+    private int mCanonicalOrientation; // See Hash1024b.findCanonical.
 
 
 
@@ -59,7 +62,7 @@ public class PicData {
         return mUniqueID.hashCode();
     }
 
-    Path getPath() {
+    public Path getPath() {
         return mPath;
     }
 
@@ -67,7 +70,7 @@ public class PicData {
         return mUrl;
     }
 
-    boolean isExamplePicture() {
+    public boolean isExamplePicture() {
         return mExamplePicture;
     }
 
@@ -83,7 +86,7 @@ public class PicData {
         mMarkedForDeletion = markedForDeletion;
     }
 
-    int getPictureWidth() {
+    public int getPictureWidth() {
         return mPictureWidth;
     }
 
@@ -91,7 +94,7 @@ public class PicData {
         mPictureWidth = pictureWidth;
     }
 
-    int getPictureHeight() {
+    public int getPictureHeight() {
         return mPictureHeight;
     }
 
@@ -99,7 +102,7 @@ public class PicData {
         mPictureHeight = pictureHeight;
     }
 
-    long getPictureFileSize() {
+    public long getPictureFileSize() {
         return mPictureFileSize;
     }
 
@@ -107,7 +110,31 @@ public class PicData {
         mPictureFileSize = pictureFileSize;
     }
 
-    double getAccuracy() {
+    long getPictureLastModified() {
+        return mPictureLastModified;
+    }
+
+    void setPictureLastModified(long pictureLastModified) {
+        mPictureLastModified = pictureLastModified;
+    }
+
+    Object getFileKey() {
+        return mFileKey;
+    }
+
+    void setFileKey(Object fileKey) {
+        mFileKey = fileKey;
+    }
+
+    long[] getContentDigest() {
+        return mContentDigest;
+    }
+
+    void setContentDigest(long[] contentDigest) {
+        mContentDigest = contentDigest;
+    }
+
+    public double getAccuracy() {
         return mAccuracy;
     }
 
@@ -115,25 +142,36 @@ public class PicData {
         mAccuracy = accuracy;
     }
 
-    List<List<Byte>> getHash1024b() {
-        return new ArrayList<>(mHash1024b);
+    /**
+     * Returns the 4 packed 1024 bit hashes. The array is not copied for efficiency, so it should be treated as read-only.
+     *
+     * @return
+     */
+    long[][] getHash1024b() {
+        return mHash1024b;
+    }
+
+    /**
+     * Returns the canonical one of the 4 hashes, which is the same for a rotated copy of this picture.
+     *
+     * @return
+     */
+    long[] getCanonicalHash1024b() {
+        return mHash1024b[mCanonicalOrientation];
     }
 
     /**
-     * Returns the number of binary 1's in 1024 bit hash.
+     * Returns the number of binary 1's in 1024 bit hash. Each orientation has the same amount of 1's.
      *
      * @return
      */
     short getHash1024bAmountOfOnes() {
-        short count = 0;
-        if (mHash1024b.get(0) == null) return 0;
-        for (Byte value : mHash1024b.get(0)) {
-            count += value;
-        }
-        return count;
+        return mHash1024bAmountOfOnes;
     }
 
-    void addHash1024b(List<Byte> hashList) {
-        mHash1024b.add(hashList);
+    void setHash1024b(long[][] hash1024b) {
+        mHash1024b = hash1024b;
+        mHash1024bAmountOfOnes = Hash1024b.calcAmountOfOnes(hash1024b[0]);
+        mCanonicalOrientation = Hash1024b.findCanonical(hash1024b);
     }
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+/**
+ * Class that walks a directory tree in parallel and passes each picture file it finds on right away, so the pictures can be processed while the
+ * walk goes on. Each directory is listed by a RecursiveAction of its own on a ForkJoinPool of this class. Listing a directory mostly waits for the
+ * file system, a network share in particular, so the pool has more threads than there are cores.
+ *
+ * Symbolic links are followed. A directory that is also one of its own ancestors is skipped, the same as Files.walkFileTree does. Directories are
+ * compared by their file key, or by Files.isSameFile on a file system without file keys.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+
+class PicPathWalker {
+
+    // Final class variables.
+    private static final int S_PARALLELISM = 16;
+    private static final int S_MAX_DEPTH = 100;
+    private static final String[] S_ACCEPTED_FILE_EXTENSIONS = {"jpg", "jpeg", "png", "bmp"};
+
+    // Variables related to the constructor.
+    private final boolean mTraversePath;
+    private final ProcessMonitor mProcessMonitor;
+    private final BiConsumer<Path, BasicFileAttributes> mPicFileConsumer;
+
+
+
+    /**
+     * Creates a walker that passes each picture file found to picFileConsumer, from multiple threads at once. If traversePath is false only the
+     * files directly in the root directory are passed.
+     *
+     * @param traversePath
+     * @param processMonitor
+     * @param picFileConsumer
+     */
+    PicPathWalker(boolean traversePath, ProcessMonitor processMonitor, BiConsumer<Path, BasicFileAttributes> picFileConsumer) {
+        mTraversePath = traversePath;
+        mProcessMonitor = processMonitor;
+        mPicFileConsumer = picFileConsumer;
+    }
+
+
+
+    /**
+     * Walks rootPath and returns once all picture files are passed on. A directory or file that can't be read is skipped.
+     *
+     * @param rootPath
+     * @throws ProcessingAbortedException
+     */
+    void walk(Path rootPath) throws ProcessingAbortedException {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(S_PARALLELISM);
+        try {
+            forkJoinPool.invoke(new DirectoryTask(rootPath, 0, null));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+        if (!mProcessMonitor.isProcessingActivated()) throw new ProcessingAbortedException();
+    }
+
+    /**
+     * Returns true if the file name of file ends with one of S_ACCEPTED_FILE_EXTENSIONS, ignoring case.
+     *
+     * @param file
+     * @return
+     */
+    static boolean hasAcceptedExtension(Path file) {
+        String fileName = file.getFileName().toString();
+        int extensionStart = fileName.lastIndexOf('.') + 1;
+        if (extensionStart == 0) return false;
+
+        for (String extension : S_ACCEPTED_FILE_EXTENSIONS) {
+            if (fileName.length() - extensionStart == extension.length() && fileName.regionMatches(true, extensionStart, extension, 0, extension.length())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if directoryA and directoryB are the same directory. Their file keys are compared if both have one, otherwise Files.isSameFile
+     * decides. A directory that can't be read is considered different.
+     *
+     * @param directoryA
+     * @param fileKeyA
+     * @param directoryB
+     * @param fileKeyB
+     * @return
+     */
+    static boolean isSameDirectory(Path directoryA, Object fileKeyA, Path directoryB, Object fileKeyB) {
+        if (fileKeyA != null && fileKeyB != null) return fileKeyA.equals(fileKeyB);
+        try {
+            return Files.isSameFile(directoryA, directoryB);
+        } catch (IOException ioEx) {
+            return false; // May be ignored. At worst the directory is walked again, down to S_MAX_DEPTH.
+        }
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper classes.
+
+    /**
+     * Lists a single directory, passes its picture files on and forks a task for each subdirectory.
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path mDirectory;
+        private final int mDepth;
+        private final Ancestor mAncestor; // The chain of directories above this one, for detecting loops of symbolic links.
+
+        private DirectoryTask(Path directory, int depth, Ancestor ancestor) {
+            mDirectory = directory;
+            mDepth = depth;
+            mAncestor = ancestor;
+        }
+
+        @Override
+        protected void compute() {
+            Ancestor self;
+            try {
+                self = new Ancestor(mDirectory, Files.readAttributes(mDirectory, BasicFileAttributes.class).fileKey(), mAncestor);
+            } catch (IOException ioEx) {
+                return; // May be ignored. The directory will be skipped though.
+            }
+            if (mAncestor != null && mAncestor.contains(self)) return;
+
+            List<DirectoryTask> subdirectoryTasks = new ArrayList<>();
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(mDirectory)) {
+                for (Path path : directoryStream) {
+                    if (!mProcessMonitor.isProcessingActivated()) return;
+
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    } catch (IOException ioEx) {
+                        continue; // May be ignored. A broken link for example. The file will be skipped though.
+                    }
+
+                    if (attributes.isDirectory()) {
+                        if (mTraversePath && mDepth + 1 < S_MAX_DEPTH) subdirectoryTasks.add(new DirectoryTask(path, mDepth + 1, self));
+                    } else if (hasAcceptedExtension(path)) mPicFileConsumer.accept(path, attributes);
+                }
+            } catch (IOException | DirectoryIteratorException miscEx) {
+                // May be ignored. The rest of the directory will be skipped though.
+            }
+
+            invokeAll(subdirectoryTasks);
+        }
+    }
+
+    /**
+     * A directory in the chain from the root directory down to the directory being listed, with its file key. A file system without file keys,
+     * such as NTFS, gives null for each directory.
+     */
+    private static class Ancestor {
+        private final Path mDirectory;
+        private final Object mFileKey;
+        private final Ancestor mParent;
+
+        private Ancestor(Path directory, Object fileKey, Ancestor parent) {
+            mDirectory = directory;
+            mFileKey = fileKey;
+            mParent = parent;
+        }
+
+        /**
+         * Returns true if directory is the same directory as this one or one of its ancestors.
+         *
+         * @param directory
+         * @return
+         */
+        private boolean contains(Ancestor directory) {
+            for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.mParent) {
+                if (isSameDirectory(directory.mDirectory, directory.mFileKey, ancestor.mDirectory, ancestor.mFileKey)) return true;
+            }
+            return false;
+        }
+    }
+}
\ No newline at end of file
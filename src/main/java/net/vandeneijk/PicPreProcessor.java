@@ -7,199 +7,311 @@
 package net.vandeneijk;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.URL;
-import java.nio.file.Files;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
 
 class PicPreProcessor {
 
+    // Final class variables.
+    private static final int S_MIN_PICTURE_LENGTH = 256;
+    private static final int S_MIN_SAMPLES_PER_CELL_AXIS = 16; // Less samples make the hash of a resized copy noticeably less similar to the original.
+    private static final int S_MIN_JPEG_BLOCKS_PER_CELL_AXIS = 2; // Below this, the coarse color of a JPEG block makes the hash too different from a full decode.
+    private static final int S_READ_BUFFER_SIZE = 64 * 1024;
+    private static final int S_MAX_JPEG_IN_MEMORY_SIZE = 64 * 1024 * 1024; // Larger JPEG files are decoded by ImageIO from the file, like other files.
+    private static final ThreadLocal<ByteBuffer> S_READ_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(S_READ_BUFFER_SIZE));
+
     // Variables related to the constructor.
     private PicData mPicData;
-    private URL mUrl;
     private PicsProcessor mPicsProcessor;
+    private HashCache mHashCache;
+    private IdenticalFileFilter mIdenticalFileFilter;
+    private ThumbnailCache mThumbnailCache; // Null if no thumbnails have to be stored.
 
     // Variables for temporary storage.
     private BufferedImage mBufferedImage;
-    private int[][][] mPictureLayouts = new int[4][][];
+    private int mScale; // Each pixel of mBufferedImage stands for a square of mScale x mScale pixels of the original picture.
 
 
 
-    PicPreProcessor(PicData picData, PicsProcessor picsProcessor) {
+    PicPreProcessor(PicData picData, PicsProcessor picsProcessor, HashCache hashCache, IdenticalFileFilter identicalFileFilter, ThumbnailCache thumbnailCache) {
         mPicData = picData;
-        mUrl = mPicData.getUrl();
         mPicsProcessor = picsProcessor;
+        mHashCache = hashCache;
+        mIdenticalFileFilter = identicalFileFilter;
+        mThumbnailCache = thumbnailCache;
     }
 
 
 
     void run() {
+        if (!mIdenticalFileFilter.claimFile(mPicData)) { // Another path to the same physical file was processed in this run, so it isn't even read.
+            if (mPicData.getHash1024b() != null) storeResults();
+            return;
+        }
         try {
-            ImageIO.setUseCache(false); // Uses RAM memory for caching instead of disk. Should increase performance somewhat (according to internet).
-            mBufferedImage = ImageIO.read(mUrl); // TODO Almost all of the delay on high core count CPU's comes from this statement. How to improve performance on modern multicore (roughly >8 threads) systems???
-            if (mBufferedImage == null) return;
-            if (mBufferedImage.getWidth() < 256 || mBufferedImage.getHeight() < 256) throw new SmallPictureException();
-        } catch (IOException | SmallPictureException miscEx) {
+            processFile();
+        } finally {
+            mIdenticalFileFilter.finishFile(mPicData);
+        }
+    }
+
+    /**
+     * Reads the file and calculates its hashes, unless a file with the same content was processed before.
+     */
+    private void processFile() {
+        byte[] jpegBytes;
+        try (FileChannel channel = FileChannel.open(mPicData.getPath(), StandardOpenOption.READ)) {
+            jpegBytes = readContent(channel);
+        } catch (IOException ioEx) {
+            return;
+        }
+        if (mHashCache.restoreByContent(mPicData)) { // The same file was processed before under another path, so it doesn't have to be decoded.
+            if (mPicData.getHash1024b() != null) storeResults();
             return;
         }
 
+        if (!mIdenticalFileFilter.claimContent(mPicData)) { // A file with the same content was processed in this run, so it doesn't have to be decoded.
+            if (mPicData.getHash1024b() != null) storeResults();
+            return;
+        }
+        try {
+            processPic(jpegBytes);
+        } finally {
+            mIdenticalFileFilter.finishContent(mPicData);
+        }
+    }
 
+    /**
+     * Reads the file through channel once, a buffer at a time, for its size and content digest, so a file is never held in memory as a whole. Only
+     * a JPEG file up to S_MAX_JPEG_IN_MEMORY_SIZE is kept in memory, because JpegDcDecoder needs its bytes, and returned. Returns null for other
+     * files.
+     *
+     * @param channel
+     * @return
+     * @throws IOException
+     */
+    private byte[] readContent(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = S_READ_BUFFER.get();
+        buffer.clear();
+        readFully(channel, buffer);
+        buffer.flip();
+
+        if (JpegDcDecoder.isJpeg(buffer) && size <= S_MAX_JPEG_IN_MEMORY_SIZE) {
+            ByteBuffer jpegBuffer = ByteBuffer.allocate((int) Math.max(size, buffer.remaining()));
+            jpegBuffer.put(buffer);
+            readFully(channel, jpegBuffer);
+            byte[] jpegBytes = Arrays.copyOf(jpegBuffer.array(), jpegBuffer.position()); // Only copies if the file has shrunk since its size was read.
+            mPicData.setPictureFileSize(jpegBytes.length);
+            mPicData.setContentDigest(ContentDigest.calcDigest(jpegBytes));
+            return jpegBytes;
+        }
 
-        // Collecting some metadata.
-        mPicData.setPictureWidth(mBufferedImage.getWidth());
-        mPicData.setPictureHeight(mBufferedImage.getHeight());
+        ContentDigest contentDigest = new ContentDigest();
+        long fileSize = 0;
+        while (buffer.hasRemaining()) {
+            fileSize += buffer.remaining();
+            contentDigest.update(buffer);
+            buffer.clear();
+            readFully(channel, buffer);
+            buffer.flip();
+        }
+        mPicData.setPictureFileSize(fileSize);
+        mPicData.setContentDigest(contentDigest.finish());
+        return null;
+    }
+
+    /**
+     * Reads from channel until buffer is full or the end of the file is reached.
+     *
+     * @param channel
+     * @param buffer
+     * @throws IOException
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) return;
+        }
+    }
+
+    /**
+     * Decodes the picture and calculates its hashes. jpegBytes holds the bytes of a JPEG file, or is null if the picture has to be read from the
+     * file.
+     *
+     * @param jpegBytes
+     */
+    private void processPic(byte[] jpegBytes) {
         try {
-            mPicData.setPictureFileSize(Files.size(mPicData.getPath()));
-        } catch (IOException ioEx) {
-            // Ignore if thrown. Metadata file size of this picture just stays 0.
+            ImageIO.setUseCache(false); // Uses RAM memory for caching instead of disk. Should increase performance somewhat (according to internet).
+            mBufferedImage = readPic(jpegBytes); // Almost all of the delay on high core count CPU's comes from decoding, so only the pixels needed for the hash are decoded.
+            if (mBufferedImage == null) return;
+        } catch (IOException | SmallPictureException | RuntimeException miscEx) { // A corrupt file can make a decoder throw a RuntimeException.
+            return;
         }
 
 
 
-        mPictureLayouts[0] = convertPicToGreyScale2DArray();
-        mPictureLayouts[1] = rotatePicOrientation(mPictureLayouts[0]);
-        mPictureLayouts[2] = rotatePicOrientation(mPictureLayouts[1]);
-        mPictureLayouts[3] = rotatePicOrientation(mPictureLayouts[2]);
+        CellGrid cellGrid = new CellGrid(mPicData.getPictureWidth(), mPicData.getPictureHeight(), mScale);
+        convertPicToGreyScaleRows(cellGrid);
+
+        calcHashesEntirePic(cellGrid);
 
-        calcCellValuesEntirePic();
+        if (mThumbnailCache != null) storeThumbnail();
 
         storeResults();
     }
 
     /**
-     * Converts a BufferedImage to a 2D array in greyscale.
+     * Decodes the picture. JPEG files are decoded at 1/8 scale by JpegDcDecoder from jpegBytes. Other files, small JPEG files and JPEG files
+     * JpegDcDecoder can't handle, are read by readSubsampledPic, from jpegBytes if there are any and otherwise from the file.
+     *
+     * @param jpegBytes
      * @return
+     * @throws IOException
+     * @throws SmallPictureException
      */
-    private int[][] convertPicToGreyScale2DArray() {
-
-        final byte[] pixels = ((DataBufferByte) mBufferedImage.getRaster().getDataBuffer()).getData();
-        final int width = mBufferedImage.getWidth();
-        final int height = mBufferedImage.getHeight();
-        final boolean hasAlphaChannel = mBufferedImage.getAlphaRaster() != null;
-
-        int[][] result = new int[width][height];
-
-        int pixelLength = 3;
-        int forLoopPixelPlus = 2;
-        int valuePixelPlus = 0;
-
-        if (hasAlphaChannel) {
-            pixelLength = 4;
-            forLoopPixelPlus = 3;
-            valuePixelPlus = 1;
-        }
-
-        for (int pixel = 0, row = 0, col = 0; pixel + forLoopPixelPlus < pixels.length-1; pixel += pixelLength) {
-            //int value0 = -16777216; // 255 alpha. Alpha channel determines transparency. Not used for this case.
-            //int value0 = (((int) pixels[pixel] & 0xff) << 24); // Alpha channel determines transparency. Not used for this case.
-            int value1 = ((int) pixels[pixel + valuePixelPlus] & 0xff); // blue
-            int value2 = (((int) pixels[pixel + valuePixelPlus + 1] & 0xff) << 8); // green
-            int value3 = (((int) pixels[pixel + valuePixelPlus + 2] & 0xff) << 16); // red
-            int value = 0;
-            if (value1 > value2) value = value1;
-            else value = value2;
-            if (value3 > value) value = value3;
-            result[col][row] = value;
-            col++;
-            if (col == width) {
-                col = 0;
-                row++;
+    private BufferedImage readPic(byte[] jpegBytes) throws IOException, SmallPictureException {
+        if (jpegBytes != null) {
+            try {
+                JpegDcDecoder jpegDcDecoder = new JpegDcDecoder(jpegBytes);
+                jpegDcDecoder.readHeader();
+                int width = jpegDcDecoder.getWidth();
+                int height = jpegDcDecoder.getHeight();
+                if (width < S_MIN_PICTURE_LENGTH || height < S_MIN_PICTURE_LENGTH) throw new SmallPictureException();
+
+                if (Math.min(width, height) >= CellGrid.CELLS_PER_AXIS * 8 * S_MIN_JPEG_BLOCKS_PER_CELL_AXIS) { // Small pictures are cheap to decode in full anyway.
+                    mPicData.setPictureWidth(width);
+                    mPicData.setPictureHeight(height);
+                    mScale = 8;
+                    return jpegDcDecoder.decode();
+                }
+            } catch (UnsupportedJpegException ujEx) {
+                // Ignore if thrown. ImageIO gets a try below.
             }
         }
 
-        return result;
+        return readSubsampledPic(ImageIO.createImageInputStream(jpegBytes != null ? new ByteArrayInputStream(jpegBytes) : mPicData.getPath().toFile()));
     }
 
     /**
-     * Rotates a 2D array by 90 degrees and returns the rotated 2D array.
+     * Reads the picture with an ImageReader. The width and height are read from the metadata first, which is enough to reject small pictures and
+     * to fill the metadata of mPicData. The picture itself is decoded with source subsampling, so only every n-th pixel along each axis is kept.
+     * The hash only needs the average of 32x32 cells, so n is chosen as large as possible while each cell still gets enough samples.
+     *
+     * @param imageInputStream
+     * @return
+     * @throws IOException
+     * @throws SmallPictureException
      */
-    private int[][] rotatePicOrientation(int[][] image) {
-        int imageWidth = image.length;
-        int imageHeight = image[0].length;
-        int[][] result = new int[imageHeight][imageWidth];
-
-        for (int i = 0; i < imageWidth; i++) {
-            for (int j = 0; j < imageHeight; j++) {
-                result[imageHeight - 1 - j][i] = image[i][j];
+    private BufferedImage readSubsampledPic(ImageInputStream imageInputStream) throws IOException, SmallPictureException {
+        try {
+            if (imageInputStream == null) return null;
+            Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+            if (!imageReaders.hasNext()) return null;
+            ImageReader imageReader = imageReaders.next();
+
+            try {
+                imageReader.setInput(imageInputStream, true, true);
+                int width = imageReader.getWidth(0);
+                int height = imageReader.getHeight(0);
+                if (width < S_MIN_PICTURE_LENGTH || height < S_MIN_PICTURE_LENGTH) throw new SmallPictureException();
+                mPicData.setPictureWidth(width);
+                mPicData.setPictureHeight(height);
+
+                int subsampling = Math.max(1, Math.min(width, height) / (CellGrid.CELLS_PER_AXIS * S_MIN_SAMPLES_PER_CELL_AXIS));
+
+                ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+                imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                mScale = subsampling;
+                return imageReader.read(0, imageReadParam);
+            } finally {
+                imageReader.dispose();
             }
+        } finally {
+            if (imageInputStream != null) imageInputStream.close();
         }
+    }
 
-        return result;
+    /**
+     * Converts a BufferedImage to greyscale one row at a time and streams each row into cellGrid. Rows that are not part of any cell are skipped.
+     *
+     * @param cellGrid
+     */
+    private void convertPicToGreyScaleRows(CellGrid cellGrid) {
+        LuminosityKernel luminosityKernel = LuminosityKernel.forPicture(mBufferedImage); // Selected once per picture, based on the layout of the raster.
+        final int height = mBufferedImage.getHeight();
+
+        int[] row = new int[mBufferedImage.getWidth()];
+
+        for (int y = 0; y < height; y++) {
+            if (!cellGrid.isRowUsed(y)) continue;
+
+            luminosityKernel.readRow(y, row);
+            cellGrid.addRow(y, row);
+        }
     }
 
     /**
-     * This method divides the entire picture in a raster of 32x32. It calculates the average luminosity of each raster cell and then uses the
-     * calcHash1024b method to create a 1024 bit hash. The special trick here is that the raster of 32x32 is actually build from 4 times a raster
-     * of 16x16. Each raster of 16x16 starts at a corner of the picture. This way, if the picture can't be exactly divided by 32 along each axis,
-     * the skipped pixels will be in the middle forming a stripe or a cross. Reason for this is to force calculation of the same pixels when the
-     * orientation of the picture is changed.
+     * Calculates the 1024 bit hash of each of the 4 orientations. The cell values of the first orientation come from cellGrid. The other 3
+     * orientations are derived by rotating the 32x32 cell values, which gives the same result as rotating the picture itself.
+     *
+     * @param cellGrid
      */
-    private void calcCellValuesEntirePic() {
-        for (int[][] pictureLayout : mPictureLayouts) { // The outer for-loop is repeated for each of the 4 picture rotations.
-            int pictureWidth = pictureLayout.length;
-            int pictureHeight = pictureLayout[0].length;
-            int cellSizeX = pictureWidth / 32;
-            int cellSizeY = pictureHeight / 32;
-            int jumpPixelsX;
-            int jumpPixelsY;
-            List<Integer> cellValues1024 = new ArrayList<>();
-
-            for (int rasterPositionY = 0; rasterPositionY < 32; rasterPositionY++) {
-                for (int rasterPositionX = 0; rasterPositionX < 32; rasterPositionX++) {
-                    if (rasterPositionY > 15) jumpPixelsY = pictureHeight - (cellSizeY * 32); // jumpPixels are used to shift each raster of 16x16 to the corner as described in the JavaDo comment.
-                    else jumpPixelsY = 0;
-                    if (rasterPositionX > 15) jumpPixelsX = pictureWidth - (cellSizeX * 32);
-                    else jumpPixelsX = 0;
-
-                    long cell1024Value = 0;
-
-                    for (int pixelY = 0; pixelY < cellSizeY; pixelY++) {
-                        for (int pixelX = 0; pixelX < cellSizeX; pixelX++) {
-                            cell1024Value += pictureLayout[(rasterPositionX * cellSizeX) + jumpPixelsX + pixelX][(rasterPositionY * cellSizeY) + jumpPixelsY + pixelY];
-                        }
-                    }
-
-                    cell1024Value /= cellSizeX * cellSizeY;
-                    cellValues1024.add((int) cell1024Value);
-                }
-            }
+    private void calcHashesEntirePic(CellGrid cellGrid) {
+        long[][] hash1024b = new long[4][];
+        int[] cellValues1024 = cellGrid.getCellValues();
 
-            mPicData.addHash1024b(calcHash1024b(cellValues1024));
+        for (int orientation = 0; orientation < hash1024b.length; orientation++) {
+            if (orientation > 0) cellValues1024 = CellGrid.rotateCellValues(cellValues1024);
+            hash1024b[orientation] = calcHash1024b(cellValues1024);
         }
+
+        mPicData.setHash1024b(hash1024b);
     }
 
     /**
      * Creates a 1024 bit hash of the average cell value of each of the 1024 cells. A binary 1 is noted if a cell has an average luminosity equal or
-     * higher than the average luminosity of the entire picture.
+     * higher than the average luminosity of the entire picture. The bits are packed in 16 longs as described in Hash1024b.
      *
      * @param cellValues
      * @return
      */
-    private List<Byte> calcHash1024b(List<Integer> cellValues) {
+    private long[] calcHash1024b(int[] cellValues) {
         long totalCellValues = 0;
         for (int value : cellValues) totalCellValues += value;
         int averageCellValue = (int) (totalCellValues / 1024);
 
-        List<Byte> hash1024b = new ArrayList<>();
-        for (Integer cellValue : cellValues) {
-            if (cellValue >= averageCellValue) {
-                hash1024b.add((byte) 1);
-            }
-            else hash1024b.add((byte) 0);
+        long[] hash1024b = new long[Hash1024b.WORDS];
+        for (int i = 0; i < Hash1024b.BITS; i++) {
+            if (cellValues[i] >= averageCellValue) hash1024b[i >>> 6] |= 1L << (i & 63);
         }
 
         return hash1024b;
     }
 
+    /**
+     * Stores a thumbnail made from mBufferedImage in mThumbnailCache, while the picture is decoded anyway. Nothing is stored if mBufferedImage was
+     * decoded at a too low resolution for a thumbnail. Its thumbnail is made by the Gui when it is shown.
+     */
+    private void storeThumbnail() {
+        BufferedImage thumbnail = ThumbnailCache.createThumbnail(mBufferedImage, mPicData.getPictureWidth(), mPicData.getPictureHeight());
+        if (thumbnail != null) mThumbnailCache.put(mPicData, thumbnail);
+    }
+
     /**
      * Writes the results to an instance of PicsProcessor before this instance of PicPreProcessor is made eligible for garbage collection.
      */
     private void storeResults() {
-        mPicsProcessor.addToPicHashOnesToPathResults(mPicData.getHash1024bAmountOfOnes(), mPicData.getPath());
-        if (mPicData.isExamplePicture()) mPicsProcessor.addToExamplePicFinishedHashing(mPicData);
-        else mPicsProcessor.addToSearchPicFinishedHashing(mPicData);
+        mPicsProcessor.addFinishedHashing(mPicData);
     }
 }
 
@@ -1,178 +1,383 @@
 /**
  * Class that is a store for the results from PicPreProcessor instances. This class uses these result to compare pictures against each
- * other on request.
+ * other on request. The results are kept in a HashStore for the example pictures and one for the search pictures, so no PicData object is kept
+ * per picture. PicData objects are only created again for the pictures in the results.
  *
  * @author Robert van den Eijk
  */
 
 package net.vandeneijk;
 
-import java.nio.file.Path;
+import java.net.MalformedURLException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 class PicsProcessor {
 
+    // Final class variables.
+    private static final int S_MAX_MULTI_INDEX_DEVIATION = 48; // Above this, the tables of MultiIndexHashIndex take too much memory and return too many candidates.
+    private static final int S_MULTI_INDEX_HEAP_SHARE = 4; // The tables of MultiIndexHashIndex may take at most a quarter of the maximum heap size.
+
+    // Variables related to the constructor.
+    private final ProcessMonitor mProcessMonitor;
+
     // Variables related to processing PicData.
-    private Map<Path, PicData> mExamplePicFinishedHashing = new HashMap<>();
-    private Map<Path, PicData> mSearchPicFinishedHashing = new HashMap<>();
-    private Map<Short, Set<Path>> mPicHashOnesToPathResults = new HashMap<>();
+    private final HashStore mExamplePicFinishedHashing = new HashStore();
+    private final HashStore mSearchPicFinishedHashing = new HashStore();
 
+    // Variables related to matching search pictures while they are hashed.
+    private HashIndex mExampleIndex;
+    private int mExampleIndexAllowedDeviation;
+    private final Map<Integer, List<PicData>> mFoundMatchesPerExampleId = new HashMap<>();
+    private final Map<Integer, PicData> mFoundExamplePics = new HashMap<>();
+    private boolean mNewMatchesFound;
 
 
-    void addToSearchPicFinishedHashing(PicData picData) {
-        mSearchPicFinishedHashing.put(picData.getPath(), picData);
-    }
 
-    void addToExamplePicFinishedHashing(PicData picData) {
-        mExamplePicFinishedHashing.put(picData.getPath(), picData);
+    PicsProcessor(ProcessMonitor processMonitor) {
+        mProcessMonitor = processMonitor;
     }
 
-    void addToPicHashOnesToPathResults(short hash1024bAmountOfOnes, Path path) {
-        mPicHashOnesToPathResults.computeIfAbsent(hash1024bAmountOfOnes, x -> new HashSet<>());
-        mPicHashOnesToPathResults.get(hash1024bAmountOfOnes).add(path);
+
+
+    /**
+     * Stores the results of a PicData object that has its hashes, either calculated by PicPreProcessor or restored by HashCache. A search picture
+     * is matched against the example pictures right away once startMatchingFromExample was called, instead of being stored. May be called from
+     * multiple threads.
+     *
+     * @param picData
+     */
+    void addFinishedHashing(PicData picData) {
+        if (picData.isExamplePicture()) mExamplePicFinishedHashing.add(picData);
+        else if (mExampleIndex != null) matchAgainstExamplePics(picData); // Only the PicData objects of the matches are needed after this.
+        else mSearchPicFinishedHashing.add(picData);
     }
 
     /**
-     * This method checks pictures from mSearchPicFinishedHashing against mExamplePicFinishedHashing. It does this by comparing each of the 4 1024 bit
-     * hashes. A certain deviation between the hashes may be allowed depending allowedDeviation.
+     * Indexes the example pictures, after which each search picture passed to addFinishedHashing is matched against them within allowedDeviation.
+     * All example pictures must be hashed before this is called. This removes the barrier between hashing and matching, so matches can be shown
+     * while the search pictures are still being hashed. See getSamePicResultsFromExampleSoFar.
      *
      * @param allowedDeviation
+     */
+    void startMatchingFromExample(int allowedDeviation) {
+        mExamplePicFinishedHashing.sort();
+        mProcessMonitor.updateStatus("Indexing " + mExamplePicFinishedHashing.size() + " example pictures.");
+        mExampleIndexAllowedDeviation = allowedDeviation;
+        mExampleIndex = createHashIndex(mExamplePicFinishedHashing, allowedDeviation);
+    }
+
+    /**
+     * Returns true if matches were found since the last call to getSamePicResultsFromExampleSoFar.
+     *
+     * @return
+     */
+    boolean hasNewMatchesFound() {
+        synchronized (mFoundMatchesPerExampleId) {
+            return mNewMatchesFound;
+        }
+    }
+
+    /**
+     * Returns the matches found so far by matching search pictures while they are hashed. Once all search pictures are added, these are the
+     * complete results. Each List holds the example picture at index position 0, followed by its matches sorted by path. The Lists are sorted by
+     * the path of the example picture. The same PicData objects are returned on every call, so a picture marked in an earlier result stays marked.
+     * A search picture that matches multiple example pictures is a separate PicData object in each List, with the accuracy of that match.
+     *
+     * The matches are only copied while holding the lock the matching search pictures take, so the sorting doesn't make them wait.
+     *
      * @return
      */
-    List<List<PicData>> getSamePicResultsFromExample(int allowedDeviation) throws ProcessingAbortedException { // TODO Make multithreaded.
+    synchronized List<List<PicData>> getSamePicResultsFromExampleSoFar() {
+        Map<Integer, List<PicData>> foundMatchesPerExampleId = new HashMap<>();
+        synchronized (mFoundMatchesPerExampleId) {
+            mNewMatchesFound = false;
+            for (Map.Entry<Integer, List<PicData>> entry : mFoundMatchesPerExampleId.entrySet()) foundMatchesPerExampleId.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+
         List<List<PicData>> result = new ArrayList<>();
-        int count = 0;
+        int[] exampleIds = foundMatchesPerExampleId.keySet().stream().mapToInt(Integer::intValue).toArray();
+        for (int exampleId : sortIdsByPath(mExamplePicFinishedHashing, exampleIds)) {
+            PicData examplePic = mFoundExamplePics.computeIfAbsent(exampleId, id -> mExamplePicFinishedHashing.createPicData(id, true));
+            examplePic.setAccuracy(100.0);
+            List<PicData> subResult = new ArrayList<>();
+            subResult.add(examplePic);
+
+            List<PicData> foundMatches = foundMatchesPerExampleId.get(exampleId);
+            foundMatches.sort(Comparator.comparing(o -> o.getPath().toString()));
+            subResult.addAll(foundMatches);
+
+            result.add(subResult);
+        }
+
+        return result;
+    }
+
+    /**
+     * This method finds the amountNearest pictures from mSearchPicFinishedHashing nearest to each picture in mExamplePicFinishedHashing, by the
+     * distance of their best orientation. Unlike getSamePicResultsFromExampleSoFar no deviation has to be chosen in advance, so candidates can be ranked
+     * in a single pass. The search pictures are indexed in a vantage point tree, which can prune by the distance of the furthest picture found so
+     * far.
+     *
+     * Each List holds the example picture at index position 0, followed by its nearest search pictures, nearest first. The accuracy of each search
+     * picture is that of its distance to the example picture, so a search picture that is near multiple example pictures is a separate PicData
+     * object in each List. The Lists are sorted by the path of the example picture.
+     *
+     * @param amountNearest
+     * @return
+     */
+    List<List<PicData>> getNearestPicResultsFromExample(int amountNearest) throws ProcessingAbortedException {
+        List<List<PicData>> result = new ArrayList<>();
+        AtomicInteger count = new AtomicInteger();
+        mExamplePicFinishedHashing.sort();
+        mSearchPicFinishedHashing.sort();
         int amountExample = mExamplePicFinishedHashing.size();
         int amountSearch = mSearchPicFinishedHashing.size();
 
-        for (PicData examplePic : mExamplePicFinishedHashing.values()) { // Loops through all the example pictures.
-            Gui.updateStatusBar("Processing results for example picture " + ++count + " of " + amountExample + " against " + amountSearch + " pictures in the search directory.");
-            if (!Gui.isProcessingActivated()) throw new ProcessingAbortedException();
-            List<PicData> subResult = new ArrayList<>(); // Creates an ArrayList for storing pics that match within specification.
-            subResult.add(examplePic); // Adds examplePic to index position 0.
+        mProcessMonitor.updateStatus("Indexing " + amountSearch + " pictures in the search directory.");
+        VpTreeHashIndex searchIndex = new VpTreeHashIndex(mSearchPicFinishedHashing);
 
-            Set<Path> filteredSet = new HashSet<>(); // Results of phase 1 of the filtering process are stored here.
+        List<Integer> exampleIds = sortIdsByPath(mExamplePicFinishedHashing, IntStream.range(0, amountExample).toArray());
 
-            // Used to calc a valid deviation in the amount of 1's a 1024 bit hash is allowed to have.
-            int examplePictureHash1024bAmountOfOnes = examplePic.getHash1024bAmountOfOnes();
-            int minAmountOfOnes = Math.max(examplePictureHash1024bAmountOfOnes - allowedDeviation, 0);
-            int maxAmountOfOnes = Math.min(examplePictureHash1024bAmountOfOnes + allowedDeviation, 1023);
+        List<long[]> nearestPerExamplePic = exampleIds.parallelStream().map(exampleId -> { // Keeps the order of exampleIds.
+            if (!mProcessMonitor.isProcessingActivated()) return null;
+            mProcessMonitor.updateStatus("Finding the nearest pictures for example picture " + count.incrementAndGet() + " of " + amountExample + " among " + amountSearch + " pictures in the search directory.");
+            return searchIndex.findNearest(mExamplePicFinishedHashing.getHash1024b(exampleId), amountNearest);
+        }).collect(Collectors.toList());
+        if (!mProcessMonitor.isProcessingActivated()) throw new ProcessingAbortedException();
 
-            // Adds all paths with a valid deviation to filteredSet.
-            for (int i = minAmountOfOnes; i <= maxAmountOfOnes; i++) {
-                if (mPicHashOnesToPathResults.get((short) i) != null) filteredSet.addAll(mPicHashOnesToPathResults.get((short) i));
-            }
+        for (int i = 0; i < exampleIds.size(); i++) {
+            long[] nearest = nearestPerExamplePic.get(i);
+            if (nearest.length == 0) continue;
 
-            // Checks all paths in filteredSet against current examplePic. If within specification, the path will be added to subResult.
-            for (Path path : filteredSet) {
-                PicData testPic = mSearchPicFinishedHashing.get(path);
-                if (testPic == null) continue;
-                if (calcIfSameEnough(examplePic, testPic, allowedDeviation)) {
-                    subResult.add(testPic);
-                }
+            PicData examplePic = mExamplePicFinishedHashing.createPicData(exampleIds.get(i), true);
+            examplePic.setAccuracy(100.0);
+            List<PicData> subResult = new ArrayList<>();
+            subResult.add(examplePic);
+            for (long entry : nearest) { // The distance is in the upper half of entry and the id in the lower half.
+                PicData searchPic = mSearchPicFinishedHashing.createPicData((int) entry, false);
+                searchPic.setAccuracy(calcAccuracy((int) (entry >>> 32)));
+                subResult.add(searchPic);
             }
 
-            if (subResult.size() > 1) {
-                // Temporary removes examplePic from the subResult for easy sorting without examplePic and then adds it to index 0 again afterward.
-                subResult.remove(0);
-                subResult.sort(Comparator.comparing(o -> o.getPath().toString()));
-                subResult.add(0, examplePic);
-
-                result.add(subResult); // Adds subResult to result List if subResult contains something else besides examplePic.
-            }
+            result.add(subResult);
         }
 
-        result.sort(Comparator.comparing(o -> o.get(0).getPath().toString())); // Sorts each List of result by the path of index 0 of each List.
-
         return result;
     }
 
     /**
-     * This method searches for exact matches in mSearchPicFinishedHashing. No deviation in the 4 1024 bit hashes is allowed.
+     * This method searches for groups of pictures in mSearchPicFinishedHashing that are the same within allowedDeviation. Each picture is compared
+     * against the candidates the index returns for it, in parallel on the common ForkJoinPool. Each matching pair joins the groups of both pictures
+     * in a ConcurrentUnionFind, so a group holds all pictures that are connected through matches. The accuracy of each picture is that of its
+     * best match. Each group and the groups by their first picture are sorted by path.
      *
+     * @param allowedDeviation
      * @return
      */
-    List<List<PicData>> getSamePicResultsWithoutExample() throws ProcessingAbortedException { // TODO Make multithreaded.
+    List<List<PicData>> getSamePicResultsWithoutExample(int allowedDeviation) throws ProcessingAbortedException {
         List<List<PicData>> result = new ArrayList<>();
-        int count = 1;
+        AtomicInteger count = new AtomicInteger();
+        mSearchPicFinishedHashing.sort();
         int amount = mSearchPicFinishedHashing.size();
 
-        for (Set<Path> pathSet : mPicHashOnesToPathResults.values()) { // The content of each pathSet has the same amount of ones in the 1024 bit hash.
-            Gui.updateStatusBar("Processing results for picture " + count + " of " + amount + ".");
-            List<PicData> filterList = new ArrayList<>(); // Creates an ArrayList for storing PicData objects that have the same amount of ones in the 1024 bit hash.
+        mProcessMonitor.updateStatus("Indexing " + amount + " pictures.");
+        HashIndex searchIndex = createHashIndex(mSearchPicFinishedHashing, allowedDeviation);
 
-            // This for-loop matches PicData to the paths found in pathSet. Because of add, null will be added if no match is found. After the for-loop, all null entries will be removed.
-            for (Path path : pathSet) {
-                filterList.add(mSearchPicFinishedHashing.get(path));
-            }
-            filterList.removeIf(Objects::isNull);
-
-            while (filterList.size() > 1) {
-                if (!Gui.isProcessingActivated()) throw new ProcessingAbortedException();
-                List<Integer> matchPositions = new ArrayList<>(); // Creates an ArrayList that stores the index positions of PicData that matches PicData of index 0 of filterList.
-                List<PicData> matchedPicData = new ArrayList<>(); // Creates an ArrayList for storing matching PicData.
-                PicData pseudoExamplePic = filterList.get(0); // pseudoExamplePic is a temporary examplePic.
-                matchedPicData.add(pseudoExamplePic); // pseudoExamplePic is added at index position 0. Matches, if found, are added later.
-
-                // Tests each PicData object in filterList against pseudoExamplePic through the calcIfSameEnough method.
-                for (int i = 1; i < filterList.size(); i++) {
-                    PicData testPic = filterList.get(i);
-                    if (calcIfSameEnough(pseudoExamplePic, testPic, 0)) {
-                        matchPositions.add(i);
-                        matchedPicData.add(testPic);
-                    }
-                }
-
-                // When the size of matchPositions is not 0, matches are found and action is taken.
-                if (matchPositions.size() != 0) {
-                    count += matchPositions.size();
-                    matchedPicData.sort(Comparator.comparing(o -> o.getPath().toString()));
-                    result.add(matchedPicData);
-                    filterList.removeIf(matchedPicData::contains);
-                }
-
-                // Index position 0 (pseudoExamplePic is always removed from filterList. The new PicData object at index position 0 will be used as pseudoExamplePic in the next iteration.
-                filterList.remove(pseudoExamplePic);
-                count++;
+        ConcurrentUnionFind groups = new ConcurrentUnionFind(amount);
+        AtomicIntegerArray bestDistances = new AtomicIntegerArray(amount);
+        for (int i = 0; i < amount; i++) bestDistances.set(i, Integer.MAX_VALUE);
+
+        IntStream.range(0, amount).parallel().forEach(i -> {
+            if (!mProcessMonitor.isProcessingActivated()) return;
+            if (count.incrementAndGet() % 1000 == 0) mProcessMonitor.updateStatus("Processing results for picture " + count.get() + " of " + amount + ".");
+
+            long[][] pseudoExampleHashes = getQueryHashes(mSearchPicFinishedHashing, i, allowedDeviation); // The hashes of a temporary examplePic.
+            for (int j : findCandidates(pseudoExampleHashes, searchIndex, allowedDeviation)) {
+                if (j <= i) continue; // Each pair is compared once, by the picture with the lowest id.
+                int distance = calcBestDistance(pseudoExampleHashes, mSearchPicFinishedHashing, j, allowedDeviation);
+                if (distance > allowedDeviation) continue;
+
+                groups.union(i, j);
+                bestDistances.accumulateAndGet(i, distance, Math::min);
+                bestDistances.accumulateAndGet(j, distance, Math::min);
             }
-        }
+        });
+        if (!mProcessMonitor.isProcessingActivated()) throw new ProcessingAbortedException();
 
-        result.sort(Comparator.comparing(o -> o.get(0).getPath().toString())); // Sorts each List of result by the path of index 0 of each List.
+        // Collects the groups in the order of the paths. Only the pictures with a match are sorted, so only their paths are read.
+        List<Integer> matchedIds = sortIdsByPath(mSearchPicFinishedHashing, IntStream.range(0, amount).filter(i -> bestDistances.get(i) != Integer.MAX_VALUE).toArray());
+        Map<Integer, List<PicData>> groupsByRoot = new LinkedHashMap<>();
+        for (int id : matchedIds) {
+            PicData picData = mSearchPicFinishedHashing.createPicData(id, false);
+            picData.setAccuracy(calcAccuracy(bestDistances.get(id)));
+            groupsByRoot.computeIfAbsent(groups.find(id), x -> new ArrayList<>()).add(picData);
+        }
+        result.addAll(groupsByRoot.values());
 
         return result;
     }
 
     /**
-     * This methods checks the 1024 bit hashes of (pseudeo)examplePic against testPic. It takes in account the allowed deviation/mismatch between the
-     * two. For each 90 degree rotation a PicData object has a 1024 bit hash (which totals to 4 per PicData object). So this method iterates through
-     * all the hashes in a nested for-loop to find the best match. The best match is tested against the allowedDeviation and when within spec, a true
-     * is returned.
+     * Returns the index that generates candidates for allowedDeviation fastest. Multi-index hashing only needs exact lookups for small deviations.
+     * For larger deviations a vantage point tree is used. So is it when the tables of multi-index hashing would take more than a share of the
+     * maximum heap size, as they grow with both the amount of pictures and allowedDeviation, while the tree only takes a fixed amount per picture.
      *
-     * @param examplePic
-     * @param testPic
+     * @param hashStore
      * @param allowedDeviation
      * @return
      */
-    private boolean calcIfSameEnough(PicData examplePic, PicData testPic, int allowedDeviation) {
-        List<List<Byte>> examplePicHashes = examplePic.getHash1024b();
-        List<List<Byte>> testPicHashes = testPic.getHash1024b();
-        int bestCount = 0;
-        for (List listExamplePic : examplePicHashes) {
-            INNER_ENHANCED_FOR_LOOP: for (List listTestPic : testPicHashes) {
-                int count = 0;
-                for (int i = 0; i <= 1023; i++) {
-                    if (listExamplePic.get(i) == listTestPic.get(i)) count++; // Counts the amount of matched bits.
-                    if (i - count > allowedDeviation) continue INNER_ENHANCED_FOR_LOOP; // Continues to the next testPic orientation if allowedDeviation is exceeded early. For efficiency.
-                }
-                if (count > bestCount) bestCount = count;
+    private static HashIndex createHashIndex(HashStore hashStore, int allowedDeviation) {
+        long maxTableBytes = Runtime.getRuntime().maxMemory() / S_MULTI_INDEX_HEAP_SHARE;
+        if (allowedDeviation <= S_MAX_MULTI_INDEX_DEVIATION && MultiIndexHashIndex.calcTableBytes(hashStore.size(), allowedDeviation) <= maxTableBytes) {
+            return new MultiIndexHashIndex(hashStore, allowedDeviation);
+        } else return new VpTreeHashIndex(hashStore);
+    }
+
+    /**
+     * Returns the hashes of id to query an index with. An exact lookup only needs the canonical hash, otherwise all 4 orientations are returned.
+     *
+     * @param hashStore
+     * @param id
+     * @param allowedDeviation
+     * @return
+     */
+    private static long[][] getQueryHashes(HashStore hashStore, int id, int allowedDeviation) {
+        if (allowedDeviation == 0) return new long[][] {hashStore.getCanonicalHash1024b(id)};
+        else return hashStore.getHash1024b(id);
+    }
+
+    /**
+     * Matches searchPic against the example pictures in mExampleIndex and keeps the matches. Each match gets a PicData object of its own without
+     * hashes, which holds the accuracy of that match, so searchPic itself isn't kept.
+     *
+     * @param searchPic
+     */
+    private void matchAgainstExamplePics(PicData searchPic) {
+        long[][] searchHashes = mExampleIndexAllowedDeviation == 0 ? new long[][] {searchPic.getCanonicalHash1024b()} : searchPic.getHash1024b();
+        for (int exampleId : findCandidates(searchHashes, mExampleIndex, mExampleIndexAllowedDeviation)) {
+            int distance = calcBestDistance(searchHashes, mExamplePicFinishedHashing, exampleId, mExampleIndexAllowedDeviation);
+            if (distance > mExampleIndexAllowedDeviation) continue;
+
+            synchronized (mFoundMatchesPerExampleId) {
+                mFoundMatchesPerExampleId.computeIfAbsent(exampleId, x -> new ArrayList<>()).add(createMatchPicData(searchPic, distance));
+                mNewMatchesFound = true;
             }
         }
+    }
 
-        if (1024 - bestCount > allowedDeviation) return false;
-        else {
-            examplePic.setAccuracy(100.0);
-            testPic.setAccuracy((100.0 / 1024) * bestCount);
-            return true;
+    /**
+     * Returns a copy of searchPic without its hashes, with the accuracy that belongs to distance.
+     *
+     * @param searchPic
+     * @param distance
+     * @return
+     */
+    private static PicData createMatchPicData(PicData searchPic, int distance) {
+        try {
+            PicData matchPic = new PicData(searchPic.getPath(), false, false);
+            matchPic.setPictureWidth(searchPic.getPictureWidth());
+            matchPic.setPictureHeight(searchPic.getPictureHeight());
+            matchPic.setPictureFileSize(searchPic.getPictureFileSize());
+            matchPic.setPictureLastModified(searchPic.getPictureLastModified());
+            matchPic.setAccuracy(calcAccuracy(distance));
+            return matchPic;
+        } catch (MalformedURLException mfuEx) {
+            throw new IllegalStateException(mfuEx); // Can't happen, because the same path was converted to a URL for searchPic.
+        }
+    }
+
+    /**
+     * Returns the ids of the pictures searchIndex finds for exampleHashes, sorted and each id once.
+     *
+     * @param exampleHashes
+     * @param searchIndex
+     * @param allowedDeviation
+     * @return
+     */
+    private static int[] findCandidates(long[][] exampleHashes, HashIndex searchIndex, int allowedDeviation) {
+        Candidates candidates = new Candidates();
+        searchIndex.findWithinDistance(exampleHashes, allowedDeviation, candidates);
+        return candidates.toSortedDistinctArray();
+    }
+
+    /**
+     * Returns ids sorted by the path of each picture in hashStore.
+     *
+     * @param hashStore
+     * @param ids
+     * @return
+     */
+    private static List<Integer> sortIdsByPath(HashStore hashStore, int[] ids) {
+        String[] paths = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) paths[i] = hashStore.getPathString(ids[i]);
+
+        return IntStream.range(0, ids.length).boxed().sorted(Comparator.comparing(i -> paths[i])).map(i -> ids[i]).collect(Collectors.toList());
+    }
+
+    /**
+     * This methods checks the 1024 bit hashes of a (pseudeo)example picture against the picture testId in hashStore. A picture has a 1024 bit hash
+     * for each 90 degree rotation (which totals to 4 per picture). Rotating both pictures the same way doesn't change their distance, so comparing
+     * each of exampleHashes against the canonical hash of testId covers all 16 combinations. The distance of the best match is returned. Once it is
+     * clear that the distance is larger than allowedDeviation, a distance larger than allowedDeviation is returned without looking further. An
+     * exact match only needs a comparison of the canonical hashes, so exampleHashes may hold only that one.
+     *
+     * @param exampleHashes
+     * @param hashStore
+     * @param testId
+     * @param allowedDeviation
+     * @return
+     */
+    private static int calcBestDistance(long[][] exampleHashes, HashStore hashStore, int testId, int allowedDeviation) {
+        int bestDistance = allowedDeviation + 1;
+        for (long[] hashExamplePic : exampleHashes) {
+            int distance = hashStore.calcDistance(hashExamplePic, testId, bestDistance - 1); // Stops early when this orientation can't beat the best match so far.
+            if (distance < bestDistance) bestDistance = distance;
+        }
+
+        return bestDistance;
+    }
+
+    /**
+     * Returns the accuracy in percent that belongs to distance.
+     *
+     * @param distance
+     * @return
+     */
+    private static double calcAccuracy(int distance) {
+        return (100.0 / 1024) * (1024 - distance);
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper classes.
+
+    /**
+     * The ids an index finds for a query, collected without boxing them.
+     */
+    private static class Candidates implements IntConsumer {
+        private int[] mIds = new int[16];
+        private int mSize;
+
+        @Override
+        public void accept(int id) {
+            if (mSize == mIds.length) mIds = Arrays.copyOf(mIds, mSize * 2);
+            mIds[mSize++] = id;
+        }
+
+        private int[] toSortedDistinctArray() {
+            Arrays.sort(mIds, 0, mSize);
+            int amount = 0;
+            for (int i = 0; i < mSize; i++) {
+                if (i == 0 || mIds[i] != mIds[i - 1]) mIds[amount++] = mIds[i];
+            }
+            return Arrays.copyOf(mIds, amount);
         }
     }
 }
\ No newline at end of file
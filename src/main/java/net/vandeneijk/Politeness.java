@@ -0,0 +1,53 @@
+/**
+ * Enum with the policies for how much of the system the pre-processing of pictures may take. A policy decides the amount of worker threads and
+ * their priority, so the workers never have to pause between pictures to leave room for the GUI and other apps.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.concurrent.ThreadFactory;
+
+public enum Politeness implements ThreadFactory {
+
+    FULL_SPEED(0, Thread.NORM_PRIORITY), // A worker on every core.
+    POLITE(1, Thread.MIN_PRIORITY); // Leaves a core free for the GUI and other apps, and gives way to them on the other cores.
+
+    // Variables related to the constructor.
+    private final int mFreeCoreCount;
+    private final int mThreadPriority;
+
+
+
+    Politeness(int freeCoreCount, int threadPriority) {
+        mFreeCoreCount = freeCoreCount;
+        mThreadPriority = threadPriority;
+    }
+
+
+
+    /**
+     * Returns the amount of worker threads to use on a system with coreCount cores. This is at least 1.
+     *
+     * @param coreCount
+     * @return
+     */
+    int getThreadCount(int coreCount) {
+        return Math.max(1, coreCount - mFreeCoreCount);
+    }
+
+    /**
+     * Creates a daemon worker thread with the priority of this policy.
+     *
+     * @param runnable
+     * @return
+     */
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setPriority(mThreadPriority);
+        return thread;
+    }
+}
\ No newline at end of file
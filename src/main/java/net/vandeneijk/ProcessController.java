@@ -1,55 +1,73 @@
 /**
- * Class that starts and keeps check on various 'under the hood' processes as started from the Gui class.
+ * Class that starts and keeps check on various 'under the hood' processes for a single scan as started by DuplicateFinder.
  *
  * @author Robert van den Eijk
  */
 
 package net.vandeneijk;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class ProcessController implements Runnable {
+class ProcessController implements Runnable {
 
     // Final class variables.
     private static final int S_CORE_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final long S_PUBLISH_INTERVAL_MILLIS = 500;
+    private static final int S_WAITING_LINE_CAPACITY = 4096; // Makes the walk wait when the workers can't keep up, so it doesn't fill up memory.
+    private static final PicData S_END_OF_WAITING_LINE = createEndOfWaitingLine(); // Put in mWaitingLinePicForProcessing once per worker after the walk.
 
     // Variables related to the constructor.
     private Path mExamplePath;
     private Path mSearchPath;
     private int mAllowedDeviation;
+    private int mNearestAmount;
     private boolean mTraverseExamplePath;
     private boolean mTraverseSearchPath;
     private boolean mUseExamplePath;
-    private static final Set<String> sAcceptedFileExtensions = new HashSet<>();
+    private Politeness mPoliteness;
+    private boolean mStoreThumbnails;
+    private ProcessMonitor mProcessMonitor;
 
     // Variables filled and initialized by method calls and statements in this class.
-    private PicsProcessor mPicsProcessor = new PicsProcessor();
-    private List<Path> mPathExampleList = new ArrayList<>();
-    private List<Path> mSearchPathList = new ArrayList<>();
-    private Map<Path, PicData> mWaitingLinePicForProcessing = new HashMap<>();
+    private PicsProcessor mPicsProcessor;
+    private IdenticalFileFilter mIdenticalFileFilter = new IdenticalFileFilter();
+    private final BlockingQueue<PicData> mWaitingLinePicForProcessing = new LinkedBlockingQueue<>(S_WAITING_LINE_CAPACITY);
+    private final AtomicInteger mCountFound = new AtomicInteger();
+    private final AtomicInteger mCountProcessing = new AtomicInteger();
+    private volatile boolean mWalkFinished;
+    private final AtomicInteger mCountWorkersRunning = new AtomicInteger();
+    private volatile boolean mWorkersFinished; // Set once no worker is left to take from mWaitingLinePicForProcessing.
     private ExecutorService mExecService;
-    private int mCountProcessing = 0;
+    private HashCache mHashCache;
+    private ThumbnailCache mThumbnailCache;
+    private ScheduledExecutorService mPublisher;
 
 
 
-    ProcessController(File examplePath, File searchPath, int allowedDeviation, boolean traverseExamplePath, boolean traverseSearchPath, boolean useExamplePath) {
-        mExamplePath = Paths.get(examplePath.toURI());
-        mSearchPath = Paths.get(searchPath.toURI());
-        mAllowedDeviation = allowedDeviation;
-        mTraverseExamplePath = traverseExamplePath;
-        mTraverseSearchPath = traverseSearchPath;
-        mUseExamplePath = useExamplePath;
-
-        sAcceptedFileExtensions.add("jpg");
-        sAcceptedFileExtensions.add("jpeg");
-        sAcceptedFileExtensions.add("png");
-        sAcceptedFileExtensions.add("bmp");
+    /**
+     * Creates a controller for a scan as described by configuration. The values of configuration are copied, so it may be changed afterwards.
+     *
+     * @param configuration
+     * @param processMonitor
+     */
+    ProcessController(ScanConfiguration configuration, ProcessMonitor processMonitor) {
+        mUseExamplePath = configuration.getExamplePath() != null;
+        mSearchPath = configuration.getSearchPath().toAbsolutePath();
+        mExamplePath = mUseExamplePath ? configuration.getExamplePath().toAbsolutePath() : mSearchPath;
+        mAllowedDeviation = configuration.getAllowedDeviation();
+        mNearestAmount = mUseExamplePath ? configuration.getNearestAmount() : 0;
+        mTraverseExamplePath = configuration.isTraverseExamplePath();
+        mTraverseSearchPath = configuration.isTraverseSearchPath();
+        mPoliteness = configuration.getPoliteness();
+        mStoreThumbnails = configuration.isStoreThumbnails();
+        mProcessMonitor = processMonitor;
+        mPicsProcessor = new PicsProcessor(processMonitor);
     }
 
 
@@ -57,167 +75,262 @@ public class ProcessController implements Runnable {
     public void run() {
         try {
             long startMillis = System.currentTimeMillis();
-            Gui.showPleaseWaitAnimation(true);
+            mProcessMonitor.processingStarted();
 
-            mExecService = Executors.newFixedThreadPool(S_CORE_COUNT);
+            mExecService = Executors.newFixedThreadPool(mPoliteness.getThreadCount(S_CORE_COUNT), mPoliteness);
+            mHashCache = HashCache.open(HashCache.getDefaultFile());
+            if (mStoreThumbnails) mThumbnailCache = new ThumbnailCache(ThumbnailCache.getDefaultFile());
 
 
 
-            Gui.updateStatusBar("Reading File Information.");
-            traversePath();
-            createPicDataFromPath();
+            mProcessMonitor.updateStatus("Reading File Information.");
+            if (mUseExamplePath) { // The example pictures are hashed first, so each search picture can be matched as soon as it is hashed.
+                hashPictures(mExamplePath, mTraverseExamplePath, true);
+                if (mNearestAmount == 0) { // The nearest pictures are only known once all are hashed.
+                    mPicsProcessor.startMatchingFromExample(mAllowedDeviation);
+                    startPublishing();
+                }
+            }
 
-            // preProcessPicData has its own status bar updates.
-            preProcessPicData();
+            hashPictures(mSearchPath, mTraverseSearchPath, false);
+            stopPublishing();
 
-            // sendResultsToGui has its own status bar updates.
-            sendResultsToGui();
+            // sendResults has its own status bar updates.
+            sendResults();
 
-            Gui.updateStatusBar("Finished in " + ((System.currentTimeMillis() - startMillis) / 1000.0) + " seconds." );
-        } catch (ProcessingAbortedException paEx) { // This instance of ProcessController will stop to exist and the GUI will NOT be updated with partly processed results.
-            Gui.updateStatusBar("Processing aborted!");
+            mProcessMonitor.updateStatus("Finished in " + ((System.currentTimeMillis() - startMillis) / 1000.0) + " seconds." );
+        } catch (ProcessingAbortedException paEx) { // This instance of ProcessController will stop to exist. Results already shown while hashing stay shown.
+            mProcessMonitor.updateStatus("Processing aborted!");
         } finally {
             if (mExecService != null) mExecService.shutdownNow();
-            Gui.showPleaseWaitAnimation(false);
-            Gui.setProcessingActivated(false);
+            if (mPublisher != null) mPublisher.shutdownNow();
+            if (mHashCache != null) mHashCache.close();
+            if (mThumbnailCache != null) mThumbnailCache.flush();
+            mProcessMonitor.processingFinished();
         }
     }
 
-    private synchronized PicData getFromWaitingLinePicForProcessing() {
-        PicData picData = null;
+    /**
+     * Walks rootPath depending traversePath and gets the hashes of all pictures found into mPicsProcessor. The walk feeds the pictures found into
+     * mWaitingLinePicForProcessing, from which the workers take them right away, so hashing starts with the first picture found. Once the walk has
+     * ended, for whatever reason, S_END_OF_WAITING_LINE is put behind the pictures once for every worker. A regular file as rootPath is an example
+     * picture chosen by the user, which is taken whatever its extension.
+     *
+     * @param rootPath
+     * @param traversePath
+     * @param examplePicture
+     */
+    private void hashPictures(Path rootPath, boolean traversePath, boolean examplePicture) throws ProcessingAbortedException {
+        mWaitingLinePicForProcessing.clear();
+        mCountFound.set(0);
+        mCountProcessing.set(0);
+        mWalkFinished = false;
+        mWorkersFinished = false;
+        List<Future<Boolean>> futures = startWorkers();
 
-        for (Path path : mWaitingLinePicForProcessing.keySet()) {
-            picData = mWaitingLinePicForProcessing.get(path);
-            mWaitingLinePicForProcessing.remove(path);
-            break;
+        try {
+            if (examplePicture && Files.isRegularFile(rootPath)) {
+                try {
+                    addToWaitingLine(rootPath, Files.readAttributes(rootPath, BasicFileAttributes.class), true);
+                } catch (IOException ioEx) {
+                    // May be ignored. File will be skipped though.
+                }
+            } else new PicPathWalker(traversePath, mProcessMonitor, (path, attributes) -> addToWaitingLine(path, attributes, examplePicture)).walk(rootPath);
+        } finally {
+            mWalkFinished = true;
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    if (!putInWaitingLine(S_END_OF_WAITING_LINE)) break;
+                }
+            } catch (InterruptedException iEx) {
+                Thread.currentThread().interrupt(); // Makes future.get below throw, after which run stops the workers by interrupting them.
+            }
         }
 
-        return picData;
+        try {
+            for (Future<Boolean> future : futures) {
+                future.get(); // If an exception was thrown in the Callable, it will be rethrown because of this statement and catched in the catch clause below.
+            }
+        } catch (InterruptedException iEx) {
+            throw new ProcessingAbortedException();
+        } catch (ExecutionException eEx) {
+            throwFailure(eEx.getCause());
+        }
     }
 
     /**
-     * Traverses ExamplePath and SearchPath depending options and writes results to their respective List.
+     * Rethrows the exception a worker ended with, so the scan fails with it instead of looking cancelled. A worker that stopped because the scan
+     * was cancelled ends with a ProcessingAbortedException or an InterruptedException, which is thrown as ProcessingAbortedException.
+     *
+     * @param cause
+     * @throws ProcessingAbortedException
      */
-    private void traversePath() throws ProcessingAbortedException {
-        if (mUseExamplePath) {
-            if (Files.isRegularFile(mExamplePath)) mPathExampleList.add(mExamplePath);
-            else mPathExampleList = getPicPathList(mExamplePath, mTraverseExamplePath);
-        }
-        mSearchPathList = getPicPathList(mSearchPath, mTraverseSearchPath);
+    private static void throwFailure(Throwable cause) throws ProcessingAbortedException {
+        if (cause instanceof ProcessingAbortedException || cause instanceof InterruptedException) throw new ProcessingAbortedException();
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new IllegalStateException(cause);
     }
 
     /**
-     * Creates PicData objects from Path objects created in the traversePath method and writes to mWaitingLinePicForProcessing.
+     * Creates a PicData object for path and puts it in mWaitingLinePicForProcessing. Waits while mWaitingLinePicForProcessing is full, unless no
+     * worker is left to take it. Called by the threads of PicPathWalker, which stop the walk themselves once the scan is cancelled.
+     *
+     * @param path
+     * @param attributes
+     * @param examplePicture
      */
-    private void createPicDataFromPath() throws ProcessingAbortedException {
-        if (mUseExamplePath) {
-            for (Path path : mPathExampleList) {
-                try {
-                    if (!Gui.isProcessingActivated()) throw new ProcessingAbortedException();
-                    mWaitingLinePicForProcessing.put(path, new PicData(path, true, false));
-                } catch (MalformedURLException mfuEx) {
-                    // May be ignored. File will be skipped though.
-                }
-            }
+    private void addToWaitingLine(Path path, BasicFileAttributes attributes, boolean examplePicture) {
+        try {
+            PicData picData = new PicData(path, examplePicture, false);
+            picData.setPictureFileSize(attributes.size());
+            picData.setPictureLastModified(attributes.lastModifiedTime().toMillis());
+            picData.setFileKey(attributes.fileKey());
+
+            if (!mProcessMonitor.isProcessingActivated() || !putInWaitingLine(picData)) return;
+            mCountFound.incrementAndGet();
+        } catch (MalformedURLException mfuEx) {
+            // May be ignored. File will be skipped though.
+        } catch (InterruptedException iEx) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        for (Path path : mSearchPathList) {
-            try {
-                if (!Gui.isProcessingActivated()) throw new ProcessingAbortedException();
-                mWaitingLinePicForProcessing.put(path, new PicData(path, false, false));
-            } catch (MalformedURLException mfuEx) {
-                // May be ignored. File will be skipped though.
-            }
-        }
+    /**
+     * Puts picData in mWaitingLinePicForProcessing, waiting for room if needed. Returns false without putting it once no worker is left. The last
+     * worker to stop empties mWaitingLinePicForProcessing, so a put that was already waiting gets room and returns.
+     *
+     * @param picData
+     * @return
+     * @throws InterruptedException
+     */
+    private boolean putInWaitingLine(PicData picData) throws InterruptedException {
+        if (mWorkersFinished) return false;
+        mWaitingLinePicForProcessing.put(picData);
+        return true;
     }
 
     /**
-     * Creates multiple Callables depending S_CORE_COUNT. Each Callable will process work from mWaitingLinePicForProcessing as long as new work is
-     * available. The PicPreProcessor class called from within does the heavy lifting.
+     * Submits multiple Callables depending S_CORE_COUNT and mPoliteness to mExecService. Each Callable takes work from mWaitingLinePicForProcessing
+     * until it takes S_END_OF_WAITING_LINE, or stops at the next picture once the scan is cancelled. A picture is restored from mHashCache where
+     * possible. Otherwise the PicPreProcessor class called from within does the heavy lifting, and the result is added to mHashCache. A picture
+     * that makes the processing fail in an unexpected way is skipped, so one corrupt file can't stop a worker. Once the last worker has stopped,
+     * for whatever reason, the walk stops waiting for room in mWaitingLinePicForProcessing.
+     *
+     * @return
      */
-    private void preProcessPicData() throws ProcessingAbortedException {
-        List<Callable<Boolean>> processPicDataTasks = new ArrayList<>();
-        final int amountProcessing = mWaitingLinePicForProcessing.size();
-
-        for (int i = 0; i < S_CORE_COUNT; i++) {
-            processPicDataTasks.add(() -> {
-                PicData picToProcess;
-                while ((picToProcess = getFromWaitingLinePicForProcessing()) != null) {
-                    if (!Gui.isProcessingActivated()) throw new ProcessingAbortedException();
-                    Gui.updateStatusBar("Pre-processing picture " + ++mCountProcessing + " of " + amountProcessing + ": " + picToProcess.getPath());
-                    try {
-                        Thread.sleep(25); // Improves performance of other apps and GUI at a slight cost on multicore systems without hyper-threading.
-                    } catch (InterruptedException iEx) {
-                        // Ignore for now.
+    private List<Future<Boolean>> startWorkers() {
+        List<Future<Boolean>> futures = new ArrayList<>();
+        int workerCount = mPoliteness.getThreadCount(S_CORE_COUNT);
+        mCountWorkersRunning.set(workerCount);
+
+        for (int i = 0; i < workerCount; i++) {
+            futures.add(mExecService.submit(() -> {
+                try {
+                    while (true) {
+                        PicData picToProcess = mWaitingLinePicForProcessing.take(); // Throws InterruptedException when run stops the workers.
+                        if (picToProcess == S_END_OF_WAITING_LINE) return true;
+                        if (!mProcessMonitor.isProcessingActivated()) throw new ProcessingAbortedException();
+
+                        mProcessMonitor.updateStatus("Pre-processing picture " + mCountProcessing.incrementAndGet() + " of " + mCountFound.get() + (mWalkFinished ? "" : " found so far") + ": " + picToProcess.getPath());
+                        processPicture(picToProcess);
+                    }
+                } finally {
+                    if (mCountWorkersRunning.decrementAndGet() == 0) {
+                        mWorkersFinished = true;
+                        mWaitingLinePicForProcessing.clear();
                     }
-                    new PicPreProcessor(picToProcess, mPicsProcessor).run();
                 }
-                return true;
-            });
+            }));
         }
 
+        return futures;
+    }
+
+    /**
+     * Gets the hashes of picToProcess into mPicsProcessor and mHashCache. Any RuntimeException is caught, after which the picture is left without
+     * hashes, the same as a picture that can't be decoded. A picture that was read but has no hashes is stored in mHashCache as one that can't be
+     * hashed, unless the scan was cancelled while it was processed.
+     *
+     * @param picToProcess
+     */
+    private void processPicture(PicData picToProcess) {
         try {
-            List<Future<Boolean>> futures = mExecService.invokeAll(processPicDataTasks); // Waits here until all Callables have returned a result or thrown an exception.
-            for (Future<Boolean> future : futures) {
-                future.get(); // If an exception was thrown in the Callable, it will be rethrown because of this statement and catched in the catch clause below.
+            if (mHashCache.restore(picToProcess)) { // Unchanged since an earlier run, so it is neither read nor decoded.
+                if (picToProcess.getHash1024b() != null) mPicsProcessor.addFinishedHashing(picToProcess);
+                return;
             }
-        } catch (InterruptedException | ExecutionException miscEx) {
-            throw new ProcessingAbortedException();
+            new PicPreProcessor(picToProcess, mPicsProcessor, mHashCache, mIdenticalFileFilter, mThumbnailCache).run();
+        } catch (RuntimeException rEx) {
+            // May be ignored. The picture is stored as one that can't be hashed below though.
         }
+
+        boolean read = picToProcess.getContentDigest() != null; // A file that can't be read may be readable next time.
+        if (picToProcess.getHash1024b() != null || read && mProcessMonitor.isProcessingActivated()) mHashCache.put(picToProcess);
     }
 
     /**
-     * Asks mPicsProcessor for the results and sends the results (if any) to the Gui. mPicsProcessor does some heavy lifting by comparing all the
-     * 1024 bit hashes from PicData objects created by PicPreProcessor.
+     * Asks mPicsProcessor for the results and sends the results (if any) to mProcessMonitor. With example pictures each search picture was already
+     * matched while it was hashed. Without, or when the nearest pictures are looked for, mPicsProcessor does some heavy lifting by comparing all
+     * the 1024 bit hashes from PicData objects created by PicPreProcessor, which can only start once all pictures are hashed.
      */
-    private void sendResultsToGui() throws ProcessingAbortedException {
-        List<List<PicData>> result;
-
-        if (mUseExamplePath) result = mPicsProcessor.getSamePicResultsFromExample(mAllowedDeviation);
-        else result = mPicsProcessor.getSamePicResultsWithoutExample();
+    private void sendResults() throws ProcessingAbortedException {
+        if (mNearestAmount > 0) publishResults(mPicsProcessor.getNearestPicResultsFromExample(mNearestAmount), true);
+        else if (mUseExamplePath) publishResults(mPicsProcessor.getSamePicResultsFromExampleSoFar(), true);
+        else publishResults(mPicsProcessor.getSamePicResultsWithoutExample(mAllowedDeviation), true);
+    }
 
-        Gui.setTree(result, mUseExamplePath);
+    /**
+     * Starts a thread that sends the matches found so far to mProcessMonitor while search pictures are still being hashed. This is done once per
+     * S_PUBLISH_INTERVAL_MILLIS and only when new matches were found, because the Gui has to update the tree each time. The workers only note
+     * that there are new matches, so they never wait for the results to be put together.
+     */
+    private void startPublishing() {
+        mPublisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SamePic results publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        mPublisher.scheduleWithFixedDelay(() -> {
+            if (mPicsProcessor.hasNewMatchesFound()) publishResults(mPicsProcessor.getSamePicResultsFromExampleSoFar(), false);
+        }, S_PUBLISH_INTERVAL_MILLIS, S_PUBLISH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * This method traverses a directory and depending settings also subdirectories to search for files with certain file extensions. When found,
-     * these are added as Path object to picPathList.
+     * Stops the thread of startPublishing, if started, and waits for an intermediate result it is sending, so it can't follow the complete result.
      *
-     * @param rootPath
-     * @param traversePath
-     * @return
+     * @throws ProcessingAbortedException
      */
-    private List<Path> getPicPathList(Path rootPath, boolean traversePath) throws ProcessingAbortedException{
-        List<Path> picPathList = new ArrayList<>();
-
+    private void stopPublishing() throws ProcessingAbortedException {
+        if (mPublisher == null) return;
+        mPublisher.shutdown();
         try {
-            Files.walkFileTree(rootPath, new HashSet<FileVisitOption>(Arrays.asList(FileVisitOption.FOLLOW_LINKS)), 100, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    if (!Gui.isProcessingActivated()) throw new TraversingNotAllowedException();
-                    String[] fileNameSplit = file.toString().split("\\.");
-                    if (sAcceptedFileExtensions.contains(fileNameSplit[fileNameSplit.length - 1].toLowerCase())) picPathList.add(file);
-                    return FileVisitResult.CONTINUE;
-                }
-
-                @Override
-                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
-                    return FileVisitResult.SKIP_SUBTREE;
-                }
-
-                @Override
-                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                    if (!traversePath) {
-                        if (rootPath.equals(dir)) return FileVisitResult.CONTINUE;
-                        else return FileVisitResult.SKIP_SUBTREE;
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
-            });
-        } catch (IOException e) {
+            mPublisher.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException iEx) {
             throw new ProcessingAbortedException();
         }
+    }
+
+    /**
+     * Sends result to mProcessMonitor.
+     *
+     * @param result
+     * @param complete
+     */
+    private void publishResults(List<List<PicData>> result, boolean complete) {
+        mProcessMonitor.showResults(result, mUseExamplePath, complete);
+    }
 
-        return picPathList;
+    /**
+     * Returns the PicData object that tells a worker the walk has ended. It is only compared by identity, so its path doesn't matter.
+     *
+     * @return
+     */
+    private static PicData createEndOfWaitingLine() {
+        try {
+            return new PicData(Paths.get(""), false, true);
+        } catch (MalformedURLException mfuEx) {
+            throw new IllegalStateException(mfuEx);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+/**
+ * Interface between the processing classes and whatever started the processing, the Gui or the command line. The processing classes report their
+ * progress and results through it and ask it whether they may go on, so they don't depend on the Gui.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.List;
+
+interface ProcessMonitor {
+
+    /**
+     * Returns false once processing has to stop. The processing classes then throw a ProcessingAbortedException.
+     *
+     * @return
+     */
+    boolean isProcessingActivated();
+
+    void processingStarted();
+
+    /**
+     * Called from multiple threads at a high rate, so an implementation should be cheap.
+     *
+     * @param status
+     */
+    void updateStatus(String status);
+
+    /**
+     * Called with the results found so far while processing and once more with the complete results. Each result contains all pictures of the
+     * one before. The first picture of each List is the example picture if containsExample is true.
+     *
+     * @param result
+     * @param containsExample
+     * @param complete
+     */
+    void showResults(List<List<PicData>> result, boolean containsExample, boolean complete);
+
+    /**
+     * Called once processing has ended, whether it completed or not.
+     */
+    void processingFinished();
+}
\ No newline at end of file
@@ -7,4 +7,7 @@
 
 package net.vandeneijk;
 
-public class ProcessingAbortedException extends Exception {}
\ No newline at end of file
+public class ProcessingAbortedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+}
\ No newline at end of file
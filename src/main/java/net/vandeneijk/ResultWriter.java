@@ -0,0 +1,105 @@
+/**
+ * Class that writes results as machine-readable text, one group at a time, so a large result is never held in memory as text. JSON Lines gives a
+ * JSON object per group on a line of its own. CSV gives a header and a row per picture, with the number of its group in the first column.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+class ResultWriter {
+
+    enum Format { JSONL, CSV }
+
+    // Variables related to the constructor.
+    private final Writer mWriter;
+    private final Format mFormat;
+
+
+
+    ResultWriter(Writer writer, Format format) {
+        mWriter = writer;
+        mFormat = format;
+    }
+
+
+
+    /**
+     * Writes result and flushes the writer. The first picture of each List is marked as example picture if containsExample is true.
+     *
+     * @param result
+     * @param containsExample
+     * @throws IOException
+     */
+    void write(List<List<PicData>> result, boolean containsExample) throws IOException {
+        if (mFormat == Format.CSV) mWriter.write("group,path,example,accuracy,width,height,file_size\n");
+
+        for (int group = 0; group < result.size(); group++) {
+            List<PicData> pictures = result.get(group);
+            if (mFormat == Format.JSONL) writeJsonLine(group + 1, pictures, containsExample);
+            else writeCsvRows(group + 1, pictures, containsExample);
+        }
+        mWriter.flush();
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    private void writeJsonLine(int group, List<PicData> pictures, boolean containsExample) throws IOException {
+        StringBuilder line = new StringBuilder("{\"group\":").append(group).append(",\"pictures\":[");
+        for (int i = 0; i < pictures.size(); i++) {
+            PicData picData = pictures.get(i);
+            if (i > 0) line.append(',');
+            line.append("{\"path\":");
+            appendJsonString(line, picData.getPath().toString());
+            line.append(",\"example\":").append(containsExample && i == 0);
+            line.append(",\"accuracy\":").append(formatAccuracy(picData.getAccuracy()));
+            line.append(",\"width\":").append(picData.getPictureWidth());
+            line.append(",\"height\":").append(picData.getPictureHeight());
+            line.append(",\"fileSize\":").append(picData.getPictureFileSize()).append('}');
+        }
+        mWriter.write(line.append("]}\n").toString());
+    }
+
+    private void writeCsvRows(int group, List<PicData> pictures, boolean containsExample) throws IOException {
+        for (int i = 0; i < pictures.size(); i++) {
+            PicData picData = pictures.get(i);
+            mWriter.write(group + "," + toCsvField(picData.getPath().toString()) + "," + (containsExample && i == 0) + "," + formatAccuracy(picData.getAccuracy())
+                    + "," + picData.getPictureWidth() + "," + picData.getPictureHeight() + "," + picData.getPictureFileSize() + "\n");
+        }
+    }
+
+    private static void appendJsonString(StringBuilder stringBuilder, String string) {
+        stringBuilder.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') stringBuilder.append('\\').append(c);
+            else if (c < 0x20) stringBuilder.append(String.format("\\u%04x", (int) c));
+            else stringBuilder.append(c);
+        }
+        stringBuilder.append('"');
+    }
+
+    /**
+     * Quotes string if it contains a character with a special meaning in CSV, with each quote doubled.
+     *
+     * @param string
+     * @return
+     */
+    private static String toCsvField(String string) {
+        if (string.indexOf(',') < 0 && string.indexOf('"') < 0 && string.indexOf('\n') < 0 && string.indexOf('\r') < 0) return string;
+        return "\"" + string.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String formatAccuracy(double accuracy) {
+        return String.format(Locale.ROOT, "%.2f", accuracy);
+    }
+}
\ No newline at end of file
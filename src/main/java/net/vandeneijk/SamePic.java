@@ -1,5 +1,5 @@
 /**
- * Class with the main method. If the application could be started with parameters, this is the place to handle them.
+ * Class with the main method. Without parameters the Gui is started. With parameters the processing runs on the command line, see CommandLine.
  *
  * @author Robert van den Eijk
  */
@@ -9,6 +9,7 @@ package net.vandeneijk;
 public class SamePic {
 
     public static void main (String[] args) {
-        new Gui().startGui();
+        if (args.length == 0) new Gui().startGui();
+        else System.exit(CommandLine.run(args));
     }
 }
\ No newline at end of file
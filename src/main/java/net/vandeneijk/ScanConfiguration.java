@@ -0,0 +1,122 @@
+/**
+ * Class that holds what a scan of DuplicateFinder looks for and how. Only the search path is required. Without an example path the duplicates
+ * within the search path are looked for. The values are copied when the scan starts, so an instance may be changed and used for another scan.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.nio.file.Path;
+
+public class ScanConfiguration {
+
+    // Variables related to the constructor.
+    private Path mSearchPath;
+
+    // Variables set and modified by setters.
+    private Path mExamplePath;
+    private boolean mTraverseExamplePath = true;
+    private boolean mTraverseSearchPath = true;
+    private int mAllowedDeviation;
+    private int mNearestAmount;
+    private Politeness mPoliteness = Politeness.FULL_SPEED;
+    private boolean mStoreThumbnails;
+
+
+
+    public ScanConfiguration(Path searchPath) {
+        mSearchPath = searchPath;
+    }
+
+
+
+    public Path getSearchPath() {
+        return mSearchPath;
+    }
+
+    public void setSearchPath(Path searchPath) {
+        mSearchPath = searchPath;
+    }
+
+    public Path getExamplePath() {
+        return mExamplePath;
+    }
+
+    /**
+     * Sets a picture file or a directory with the pictures to look for. Null, the default, searches for duplicates without example.
+     *
+     * @param examplePath
+     */
+    public void setExamplePath(Path examplePath) {
+        mExamplePath = examplePath;
+    }
+
+    public boolean isTraverseExamplePath() {
+        return mTraverseExamplePath;
+    }
+
+    public void setTraverseExamplePath(boolean traverseExamplePath) {
+        mTraverseExamplePath = traverseExamplePath;
+    }
+
+    public boolean isTraverseSearchPath() {
+        return mTraverseSearchPath;
+    }
+
+    public void setTraverseSearchPath(boolean traverseSearchPath) {
+        mTraverseSearchPath = traverseSearchPath;
+    }
+
+    public int getAllowedDeviation() {
+        return mAllowedDeviation;
+    }
+
+    /**
+     * Sets the amount of hash bits, from 0 to Hash1024b.BITS, in which two pictures may differ to still be the same picture.
+     *
+     * @param allowedDeviation
+     */
+    public void setAllowedDeviation(int allowedDeviation) {
+        if (allowedDeviation < 0 || allowedDeviation > Hash1024b.BITS) throw new IllegalArgumentException("Not a deviation from 0 to " + Hash1024b.BITS + ": " + allowedDeviation);
+        mAllowedDeviation = allowedDeviation;
+    }
+
+    public int getNearestAmount() {
+        return mNearestAmount;
+    }
+
+    /**
+     * Sets the amount of search pictures nearest to each example picture to look for instead of the ones within the allowed deviation. The result
+     * then holds the nearest search pictures of each example picture, nearest first, however much they differ. 0, the default, looks for the
+     * pictures within the allowed deviation. Only used with an example path.
+     *
+     * @param nearestAmount
+     */
+    public void setNearestAmount(int nearestAmount) {
+        if (nearestAmount < 0) throw new IllegalArgumentException("Not an amount of 0 or more: " + nearestAmount);
+        mNearestAmount = nearestAmount;
+    }
+
+    public Politeness getPoliteness() {
+        return mPoliteness;
+    }
+
+    public void setPoliteness(Politeness politeness) {
+        mPoliteness = politeness;
+    }
+
+    public boolean isStoreThumbnails() {
+        return mStoreThumbnails;
+    }
+
+    /**
+     * Sets whether a thumbnail of each picture decoded is stored on disk, so the results can be looked at later without reading the pictures
+     * again. Off by default, because it costs some time for each picture.
+     *
+     * @param storeThumbnails
+     */
+    public void setStoreThumbnails(boolean storeThumbnails) {
+        mStoreThumbnails = storeThumbnails;
+    }
+}
\ No newline at end of file
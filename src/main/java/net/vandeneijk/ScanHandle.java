@@ -0,0 +1,76 @@
+/**
+ * Class that is handed out by DuplicateFinder for each scan it starts. It cancels the scan and gives the complete result once it is there. The
+ * result may be there before the scan has finished, because the hash cache is written afterwards.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+public class ScanHandle {
+
+    // Variables filled by method calls.
+    private final CompletableFuture<List<List<PicData>>> mResult = new CompletableFuture<>();
+    private final CountDownLatch mFinished = new CountDownLatch(1);
+    private volatile boolean mCancelled;
+
+
+
+    ScanHandle() {}
+
+
+
+    /**
+     * Asks the scan to stop. The scan stops as soon as the pictures being processed are done, after which the result completes with a
+     * CancellationException. Cancelling the Future of getResult does the same.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled || mResult.isCancelled();
+    }
+
+    /**
+     * Returns the complete result of the scan. The Future completes with a CancellationException if the scan was cancelled and with an
+     * ExecutionException if the scan failed.
+     *
+     * @return
+     */
+    public Future<List<List<PicData>>> getResult() {
+        return mResult;
+    }
+
+    public boolean isFinished() {
+        return mFinished.getCount() == 0;
+    }
+
+    /**
+     * Waits until the scan has finished, whether it completed or not. After cancel this is the moment all threads of the scan are stopped.
+     *
+     * @throws InterruptedException
+     */
+    public void awaitFinished() throws InterruptedException {
+        mFinished.await();
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // From here getters and setters for non-private use.
+
+    CompletableFuture<List<List<PicData>>> getResultCompletion() {
+        return mResult;
+    }
+
+    void setFinished() {
+        mFinished.countDown();
+    }
+}
\ No newline at end of file
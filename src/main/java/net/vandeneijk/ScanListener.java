@@ -0,0 +1,37 @@
+/**
+ * Interface through which a scan of DuplicateFinder reports its progress and results. All methods are called from the threads of the scan, so an
+ * implementation that updates a GUI has to pass the call on to the GUI thread itself. Each method does nothing by default.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.List;
+
+public interface ScanListener {
+
+    default void scanStarted() {}
+
+    /**
+     * Called from multiple threads at a high rate, so an implementation should be cheap.
+     *
+     * @param status
+     */
+    default void statusChanged(String status) {}
+
+    /**
+     * Called with the results found so far while scanning and once more with the complete results. Each result contains all pictures of the one
+     * before. The first picture of each List is the example picture if containsExample is true.
+     *
+     * @param result
+     * @param containsExample
+     * @param complete
+     */
+    default void resultsChanged(List<List<PicData>> result, boolean containsExample, boolean complete) {}
+
+    /**
+     * Called once the scan has ended, whether it completed or not.
+     */
+    default void scanFinished() {}
+}
\ No newline at end of file
@@ -6,4 +6,7 @@
 
 package net.vandeneijk;
 
-public class SmallPictureException extends Exception {}
\ No newline at end of file
+public class SmallPictureException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+}
\ No newline at end of file
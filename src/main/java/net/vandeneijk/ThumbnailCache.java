@@ -0,0 +1,313 @@
+/**
+ * Class that keeps the thumbnails of pictures on disk between runs, so the results of an earlier scan can be looked at without reading the
+ * pictures themselves again, which is slow for large pictures and pictures on a network share. A thumbnail is identified by a 64 bit hash of the
+ * absolute path of its picture together with the file size and last modified time, the same as the first tier of HashCache.
+ *
+ * The cache is a single binary file that is only appended to. Each record holds the identification of a picture and its thumbnail as JPEG. A
+ * later record for the same path replaces an earlier one. The header holds the length of the records that were completely written, so a record
+ * of an interrupted append is overwritten by the next append. The index from path hash to record is built from the records the first time a
+ * thumbnail is looked up, and extended with the records appended since then, by any instance, at each lookup of a thumbnail that isn't known.
+ * Once the file would get larger than S_MAX_FILE_SIZE it is started over, which is noted in the header by a new generation.
+ *
+ * New records are appended in batches while holding a file lock, the same as HashCache.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+class ThumbnailCache {
+
+    // Final class variables.
+    static final int SIZE = 158; // The maximum width and height of a thumbnail.
+    private static final int S_MAGIC = 0x53505443; // "SPTC"
+    private static final int S_VERSION = 1;
+    private static final int S_HEADER_SIZE = 4 + 4 + 8 + 8; // magic, version, generation and length of the complete records.
+    private static final int S_RECORD_HEADER_SIZE = 8 + 8 + 8 + 4; // path hash, file size, last modified and length of the thumbnail.
+    private static final int S_MAX_THUMBNAIL_SIZE = 1024 * 1024; // Anything larger is a damaged record.
+    private static final long S_MAX_FILE_SIZE = 2L * 1024 * 1024 * 1024;
+    private static final int S_BYTES_PER_APPEND = 256 * 1024;
+    private static final Object S_APPEND_LOCK = new Object(); // See HashCache.
+
+    // Variables related to the constructor.
+    private final Path mFile;
+
+    // Variables filled by method calls.
+    private long[] mIndexKeys = new long[1024];
+    private long[] mIndexPositions = new long[1024]; // Position of the record for each slot of mIndexKeys. 0 is an empty slot.
+    private int mIndexCount;
+    private long mIndexedGeneration = -1;
+    private long mIndexedSize;
+    private final ByteArrayOutputStream mPendingRecords = new ByteArrayOutputStream(S_BYTES_PER_APPEND);
+
+
+
+    ThumbnailCache(Path file) {
+        mFile = file;
+    }
+
+
+
+    /**
+     * Returns the location of the cache file in the home directory of the user.
+     *
+     * @return
+     */
+    static Path getDefaultFile() {
+        return Paths.get(System.getProperty("user.home"), ".samepic", "thumbnails.bin");
+    }
+
+    /**
+     * Returns a thumbnail of at most SIZE x SIZE of picture, which is a picture of pictureWidth x pictureHeight, possibly decoded at a lower
+     * resolution. Returns null if picture has a too low resolution for the thumbnail, in which case the thumbnail has to be made from the picture
+     * decoded in full.
+     *
+     * @param picture
+     * @param pictureWidth
+     * @param pictureHeight
+     * @return
+     */
+    static BufferedImage createThumbnail(BufferedImage picture, int pictureWidth, int pictureHeight) {
+        double scale = Math.min(1, Math.min((double) SIZE / pictureWidth, (double) SIZE / pictureHeight));
+        int width = Math.max(1, (int) Math.round(pictureWidth * scale));
+        int height = Math.max(1, (int) Math.round(pictureHeight * scale));
+        if (picture.getWidth() < width || picture.getHeight() < height) return null;
+
+        BufferedImage scaledPicture = picture;
+        while (scaledPicture.getWidth() >= width * 2 && scaledPicture.getHeight() >= height * 2) { // Halving first keeps bilinear scaling from skipping pixels.
+            scaledPicture = drawScaled(scaledPicture, scaledPicture.getWidth() / 2, scaledPicture.getHeight() / 2);
+        }
+        return drawScaled(scaledPicture, width, height);
+    }
+
+    /**
+     * Returns the thumbnail of picData as JPEG, or null if there is none for the current file size and last modified time of picData.
+     *
+     * @param picData
+     * @return
+     */
+    synchronized byte[] get(PicData picData) {
+        long pathHash = HashCache.calcPathHash(picData.getPath());
+        try (FileChannel channel = FileChannel.open(mFile, StandardOpenOption.READ)) {
+            updateIndex(channel);
+            long position = mIndexPositions[findSlot(pathHash)];
+            if (position == 0) return null;
+
+            ByteBuffer recordHeader = read(channel, position, S_RECORD_HEADER_SIZE);
+            if (recordHeader == null || recordHeader.getLong(0) != pathHash || recordHeader.getLong(8) != picData.getPictureFileSize()
+                    || recordHeader.getLong(16) != picData.getPictureLastModified()) return null;
+            int length = recordHeader.getInt(24);
+            if (length <= 0 || length > S_MAX_THUMBNAIL_SIZE) return null;
+
+            ByteBuffer thumbnail = read(channel, position + S_RECORD_HEADER_SIZE, length);
+            return thumbnail == null ? null : thumbnail.array();
+        } catch (NoSuchFileException nsfEx) {
+            return null; // May be ignored. No thumbnail stored yet.
+        } catch (IOException ioEx) {
+            return null; // May be ignored. The thumbnail will be made from the picture.
+        }
+    }
+
+    /**
+     * Adds thumbnail as the thumbnail of picData. The record is written to disk with the next batch or when flush is called. May be called from
+     * multiple threads.
+     *
+     * @param picData
+     * @param thumbnail
+     */
+    void put(PicData picData, BufferedImage thumbnail) {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        try {
+            if (!ImageIO.write(toRgb(thumbnail), "jpg", jpeg)) return;
+        } catch (IOException ioEx) {
+            return; // May be ignored. No thumbnail will be stored though.
+        }
+        if (jpeg.size() > S_MAX_THUMBNAIL_SIZE) return;
+
+        ByteBuffer recordHeader = ByteBuffer.allocate(S_RECORD_HEADER_SIZE);
+        recordHeader.putLong(HashCache.calcPathHash(picData.getPath()));
+        recordHeader.putLong(picData.getPictureFileSize());
+        recordHeader.putLong(picData.getPictureLastModified());
+        recordHeader.putInt(jpeg.size());
+
+        synchronized (this) {
+            mPendingRecords.write(recordHeader.array(), 0, S_RECORD_HEADER_SIZE);
+            mPendingRecords.write(jpeg.toByteArray(), 0, jpeg.size());
+            if (mPendingRecords.size() >= S_BYTES_PER_APPEND) appendPendingRecords();
+        }
+    }
+
+    /**
+     * Writes the records that are not yet on disk.
+     */
+    synchronized void flush() {
+        if (mPendingRecords.size() > 0) appendPendingRecords();
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    /**
+     * Appends mPendingRecords to the cache file while holding a lock on it. If the file has an unknown version or would get too large, it is
+     * started over.
+     */
+    private void appendPendingRecords() {
+        try {
+            Files.createDirectories(mFile.getParent());
+            synchronized (S_APPEND_LOCK) { // Otherwise channel.lock throws an OverlappingFileLockException.
+                try (FileChannel channel = FileChannel.open(mFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    channel.lock(); // Released when the channel is closed.
+                    ByteBuffer header = read(channel, 0, S_HEADER_SIZE);
+                    boolean validHeader = hasValidHeader(header);
+                    long generation = validHeader ? header.getLong(8) : 0;
+                    long size = validHeader ? header.getLong(16) : S_HEADER_SIZE;
+                    if (!validHeader || size + mPendingRecords.size() > S_MAX_FILE_SIZE) {
+                        channel.truncate(0);
+                        generation++;
+                        size = S_HEADER_SIZE;
+                    }
+
+                    write(channel, size, ByteBuffer.wrap(mPendingRecords.toByteArray()));
+                    size += mPendingRecords.size();
+                    ByteBuffer newHeader = ByteBuffer.allocate(S_HEADER_SIZE).putInt(S_MAGIC).putInt(S_VERSION).putLong(generation).putLong(size);
+                    newHeader.flip();
+                    write(channel, 0, newHeader); // Only now the new records count.
+                }
+            }
+        } catch (IOException ioEx) {
+            // May be ignored. The thumbnails will be made from the pictures next time.
+        } finally {
+            mPendingRecords.reset();
+        }
+    }
+
+    /**
+     * Adds the records appended to the cache file since the last call to the index. Starts the index over if the file was started over.
+     *
+     * @param channel
+     * @throws IOException
+     */
+    private void updateIndex(FileChannel channel) throws IOException {
+        ByteBuffer header = read(channel, 0, S_HEADER_SIZE);
+        if (!hasValidHeader(header)) return;
+        long generation = header.getLong(8);
+        long size = Math.min(header.getLong(16), channel.size());
+
+        if (generation != mIndexedGeneration || size < mIndexedSize) {
+            mIndexKeys = new long[1024];
+            mIndexPositions = new long[1024];
+            mIndexCount = 0;
+            mIndexedGeneration = generation;
+            mIndexedSize = S_HEADER_SIZE;
+        }
+
+        while (mIndexedSize + S_RECORD_HEADER_SIZE <= size) {
+            ByteBuffer recordHeader = read(channel, mIndexedSize, S_RECORD_HEADER_SIZE);
+            if (recordHeader == null) return;
+            int length = recordHeader.getInt(24);
+            if (length <= 0 || length > S_MAX_THUMBNAIL_SIZE || mIndexedSize + S_RECORD_HEADER_SIZE + length > size) return; // Damaged, so the rest can't be found.
+
+            addToIndex(recordHeader.getLong(0), mIndexedSize);
+            mIndexedSize += S_RECORD_HEADER_SIZE + length;
+        }
+    }
+
+    private void addToIndex(long pathHash, long position) {
+        if ((mIndexCount + 1) * 2 > mIndexKeys.length) { // Keeps the load factor at most 0.5.
+            long[] indexKeys = mIndexKeys;
+            long[] indexPositions = mIndexPositions;
+            mIndexKeys = new long[indexKeys.length * 2];
+            mIndexPositions = new long[indexKeys.length * 2];
+            for (int slot = 0; slot < indexKeys.length; slot++) {
+                if (indexPositions[slot] == 0) continue;
+                int newSlot = findSlot(indexKeys[slot]);
+                mIndexKeys[newSlot] = indexKeys[slot];
+                mIndexPositions[newSlot] = indexPositions[slot];
+            }
+        }
+
+        int slot = findSlot(pathHash);
+        if (mIndexPositions[slot] == 0) mIndexCount++;
+        mIndexKeys[slot] = pathHash;
+        mIndexPositions[slot] = position; // Overwrites an earlier record of the same path.
+    }
+
+    /**
+     * Returns the slot of mIndexKeys that holds key, or the empty slot where it should be added. Uses linear probing, the same as HashCache.
+     *
+     * @param key
+     * @return
+     */
+    private int findSlot(long key) {
+        int mask = mIndexKeys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (mIndexPositions[slot] != 0 && mIndexKeys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private static boolean hasValidHeader(ByteBuffer header) {
+        return header != null && header.getInt(0) == S_MAGIC && header.getInt(4) == S_VERSION;
+    }
+
+    /**
+     * Returns length bytes of channel from position, or null if the file ends before.
+     *
+     * @param channel
+     * @param position
+     * @param length
+     * @return
+     * @throws IOException
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) return null;
+        }
+        return buffer;
+    }
+
+    private static void write(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer, position + buffer.position());
+    }
+
+    private static BufferedImage drawScaled(BufferedImage picture, int width, int height) {
+        BufferedImage scaledPicture = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaledPicture.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(picture, 0, 0, width, height, Color.WHITE, null); // Transparent parts become white.
+        } finally {
+            graphics.dispose();
+        }
+        return scaledPicture;
+    }
+
+    /**
+     * Returns thumbnail as a picture without transparency, because that is all a JPEG can hold.
+     *
+     * @param thumbnail
+     * @return
+     */
+    private static BufferedImage toRgb(BufferedImage thumbnail) {
+        if (thumbnail.getType() == BufferedImage.TYPE_INT_RGB) return thumbnail;
+        return drawScaled(thumbnail, thumbnail.getWidth(), thumbnail.getHeight());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,213 @@
+/**
+ * Class that loads the thumbnails for the Gui. A thumbnail is read from ThumbnailCache if it is there. Otherwise it is made from the picture
+ * itself and added to ThumbnailCache. Decoding a picture can take long for a large picture or a picture on a network share, so it is done by a
+ * few worker threads of this class instead of the GUI thread. The thumbnails loaded are kept in memory, the least recently used one is dropped
+ * once they take more than S_CACHE_BUDGET_BYTES.
+ *
+ * Requests to show a thumbnail are taken before requests to prefetch one, and the newest request first, so the thumbnails of the group the user
+ * looks at right now are loaded before those of a group the user already scrolled past. The oldest requests are dropped once there are more than
+ * S_MAX_WAITING_REQUESTS. A picture is only loaded by one worker at a time, a request for a picture that is being loaded waits for that load.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.*;
+import java.util.function.Consumer;
+
+class ThumbnailLoader {
+
+    // Final class variables.
+    private static final int S_THREAD_COUNT = 2;
+    private static final long S_CACHE_BUDGET_BYTES = 64 * 1024 * 1024;
+    private static final int S_ENTRY_OVERHEAD_BYTES = 256; // So a picture that can't be decoded, and has no size, counts as well.
+    private static final int S_MAX_WAITING_REQUESTS = 256;
+
+    // Variables related to the constructor.
+    private final ThumbnailCache mThumbnailCache;
+
+    // Variables filled by method calls.
+    private final LinkedHashMap<String, Image> mCache = new LinkedHashMap<>(16, 0.75f, true); // In order of access, the least recently used first.
+    private long mCacheBytes;
+    private final Map<String, List<Consumer<Image>>> mWaitingConsumers = new HashMap<>(); // By key of each picture requested, but not yet loaded.
+    private final Set<String> mLoadingKeys = new HashSet<>(); // The keys a worker is loading right now.
+    private final Deque<PicData> mShowRequests = new ArrayDeque<>();
+    private final Deque<PicData> mPrefetchRequests = new ArrayDeque<>();
+    private boolean mWorkersStarted;
+
+
+
+    ThumbnailLoader(ThumbnailCache thumbnailCache) {
+        mThumbnailCache = thumbnailCache;
+    }
+
+
+
+    /**
+     * Loads the thumbnail of picData in the background and passes it to consumer on the GUI thread. If it is in memory, it is passed right away.
+     *
+     * @param picData
+     * @param consumer
+     */
+    synchronized void load(PicData picData, Consumer<Image> consumer) {
+        String key = getKey(picData);
+        Image image = mCache.get(key);
+        if (image != null) {
+            consumer.accept(image);
+            return;
+        }
+
+        List<Consumer<Image>> consumers = mWaitingConsumers.get(key);
+        if (consumers == null) {
+            consumers = new ArrayList<>();
+            mWaitingConsumers.put(key, consumers);
+        }
+        consumers.add(consumer);
+        addRequest(mShowRequests, picData);
+    }
+
+    /**
+     * Loads the thumbnail of picData in the background, if it isn't in memory yet, so it can be shown right away when it is asked for.
+     *
+     * @param picData
+     */
+    synchronized void prefetch(PicData picData) {
+        String key = getKey(picData);
+        if (!mCache.containsKey(key) && !mLoadingKeys.contains(key)) addRequest(mPrefetchRequests, picData);
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    private void addRequest(Deque<PicData> requests, PicData picData) {
+        requests.offerFirst(picData);
+        while (requests.size() > S_MAX_WAITING_REQUESTS) {
+            PicData droppedPicData = requests.pollLast();
+            if (requests == mShowRequests) mWaitingConsumers.remove(getKey(droppedPicData)); // Its thumbnail isn't looked at anymore.
+        }
+        notifyAll();
+
+        if (mWorkersStarted) return;
+        for (int i = 0; i < S_THREAD_COUNT; i++) {
+            Thread worker = new Thread(this::work, "Thumbnail loader " + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+        }
+        mWorkersStarted = true;
+    }
+
+    private void work() {
+        while (true) {
+            PicData picData;
+            String key;
+            synchronized (this) {
+                while (true) {
+                    picData = mShowRequests.pollFirst();
+                    if (picData == null) picData = mPrefetchRequests.pollFirst();
+                    if (picData == null) {
+                        try {
+                            wait();
+                        } catch (InterruptedException iEx) {
+                            return;
+                        }
+                        continue;
+                    }
+
+                    key = getKey(picData);
+                    if (mCache.containsKey(key)) passOn(key, mCache.get(key)); // Loaded already by an earlier request for the same picture.
+                    else if (mLoadingKeys.add(key)) break; // Otherwise another worker is loading it, which passes it on to the waiting consumers too.
+                }
+            }
+
+            Image image;
+            try {
+                image = readThumbnail(picData);
+            } catch (RuntimeException rEx) {
+                synchronized (this) {
+                    mLoadingKeys.remove(key);
+                    mWaitingConsumers.remove(key); // May be ignored. No thumbnail will be shown though.
+                }
+                continue;
+            }
+
+            synchronized (this) {
+                mLoadingKeys.remove(key);
+                addToCache(key, image);
+                passOn(key, image);
+            }
+        }
+    }
+
+    /**
+     * Reads the thumbnail of picData from mThumbnailCache, or makes it from the picture and adds it to mThumbnailCache. A picture that can't be
+     * decoded gives an Image with an error.
+     *
+     * @param picData
+     * @return
+     */
+    private Image readThumbnail(PicData picData) {
+        byte[] storedThumbnail = mThumbnailCache.get(picData);
+        if (storedThumbnail != null) return new Image(new ByteArrayInputStream(storedThumbnail));
+
+        Image image = new Image(picData.getUrl().toString(), ThumbnailCache.SIZE, ThumbnailCache.SIZE, true, false);
+        if (image.isError()) return image;
+
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        thumbnail.setRGB(0, 0, width, height, pixels, 0, width);
+        mThumbnailCache.put(picData, thumbnail);
+        mThumbnailCache.flush(); // Thumbnails are made at the pace of the user, so there is no batch to wait for.
+        return image;
+    }
+
+    private void addToCache(String key, Image image) {
+        Image replaced = mCache.put(key, image);
+        if (replaced != null) mCacheBytes -= getBytes(replaced);
+        mCacheBytes += getBytes(image);
+
+        Iterator<Image> iterator = mCache.values().iterator();
+        while (mCacheBytes > S_CACHE_BUDGET_BYTES && iterator.hasNext()) {
+            mCacheBytes -= getBytes(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private void passOn(String key, Image image) {
+        List<Consumer<Image>> consumers = mWaitingConsumers.remove(key);
+        if (consumers == null) return;
+
+        Platform.runLater(new Runnable() {
+            @Override
+            public void run() {
+                for (Consumer<Image> consumer : consumers) consumer.accept(image);
+            }
+        });
+    }
+
+    private static long getBytes(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4 + S_ENTRY_OVERHEAD_BYTES;
+    }
+
+    /**
+     * Returns a key that changes when the file of picData changes, so a picture changed between two runs doesn't show an old thumbnail.
+     *
+     * @param picData
+     * @return
+     */
+    private static String getKey(PicData picData) {
+        return picData.getPath() + "|" + picData.getPictureFileSize() + "|" + picData.getPictureLastModified();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,13 @@
+/**
+ * Class for custom Exception handling. This exception is thrown when JpegDcDecoder can't handle a JPEG file, because it uses a feature that isn't
+ * supported or because the file is damaged. The picture should then be read by ImageIO instead.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+public class UnsupportedJpegException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+}
\ No newline at end of file
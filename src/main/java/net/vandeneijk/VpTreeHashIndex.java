@@ -0,0 +1,252 @@
+/**
+ * Class that indexes 1024 bit hashes in a vantage point tree. Each node picks one hash as vantage point and splits the other hashes of its
+ * subtree in two halves at the median Hamming distance to the vantage point. A query only descends into a half that can hold hashes within the
+ * query distance, which the triangle inequality of the Hamming distance guarantees. Small subtrees are scanned linearly.
+ *
+ * The tree is stored implicitly in an array of ids. A subtree covers a range of the array with its vantage point at the first position and the
+ * two halves after it, so no node objects are needed. Once built, the hashes are copied in tree order into a HashArray, so a query reads them
+ * sequentially from memory. Large subtrees are built in parallel on the common ForkJoinPool.
+ *
+ * Besides the queries of HashIndex, the tree answers queries for the nearest pictures, for which no maximum distance is known in advance.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+class VpTreeHashIndex implements HashIndex {
+
+    // Final class variables.
+    private static final int S_LEAF_SIZE = 32;
+    private static final int S_MIN_PARALLEL_BUILD_SIZE = 4096;
+
+    // Variables related to the constructor.
+    private final HashStore mHashStore;
+    private final int[] mIds; // The ids in tree order.
+    private final int[] mThresholds; // The median distance of each subtree, stored at the position of its vantage point.
+    private final HashArray mHashes; // The hashes in tree order.
+
+
+
+    /**
+     * Creates an index over all pictures in hashStore. hashStore must be sorted.
+     *
+     * @param hashStore
+     */
+    VpTreeHashIndex(HashStore hashStore) {
+        mHashStore = hashStore;
+        mIds = new int[hashStore.size()];
+        for (int i = 0; i < mIds.length; i++) mIds[i] = i;
+        mThresholds = new int[mIds.length];
+
+        ForkJoinPool.commonPool().invoke(new BuildTask(0, mIds.length));
+
+        mHashes = new HashArray(mIds.length);
+        for (int i = 0; i < mIds.length; i++) mHashes.set(i, hashStore.getCanonicalHash1024b(mIds[i]));
+    }
+
+
+
+    @Override
+    public void findWithinDistance(long[][] hashes, int maxDistance, IntConsumer result) {
+        for (long[] hash : hashes) search(0, mIds.length, hash, maxDistance, result);
+    }
+
+    /**
+     * Returns the amount indexed pictures nearest to the picture with hashes in their best orientation, nearest first. Each entry holds the
+     * distance in the upper half and the id in the lower half, so pictures at the same distance are ordered by id.
+     *
+     * The amount nearest pictures found so far are kept in a bounded priority queue. A half of a subtree is only searched when it can hold a
+     * picture that is not further away than the furthest picture in the queue, so the search gets cheaper as the queue fills with near pictures.
+     * All orientations are searched in a single pass over the tree, so each picture is compared once.
+     *
+     * @param hashes
+     * @param amount
+     * @return
+     */
+    long[] findNearest(long[][] hashes, int amount) {
+        if (amount < 0) throw new IllegalArgumentException("amount " + amount + " is negative");
+
+        NearestQueue nearestQueue = new NearestQueue(Math.min(amount, mIds.length));
+        if (nearestQueue.mCapacity > 0) searchNearest(0, mIds.length, hashes, nearestQueue);
+        return nearestQueue.toSortedArray();
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods and classes.
+
+    private void search(int low, int high, long[] hash, int maxDistance, IntConsumer result) {
+        if (high - low <= S_LEAF_SIZE) {
+            for (int i = low; i < high; i++) {
+                if (mHashes.calcDistance(hash, i, maxDistance) <= maxDistance) result.accept(mIds[i]);
+            }
+            return;
+        }
+
+        int threshold = mThresholds[low];
+        int distance = mHashes.calcDistance(hash, low, threshold + maxDistance); // A larger distance leads to the same decisions below.
+        if (distance <= maxDistance) result.accept(mIds[low]);
+
+        int middle = calcMiddle(low, high);
+        if (distance - maxDistance <= threshold) search(low + 1, middle, hash, maxDistance, result);
+        if (distance + maxDistance >= threshold) search(middle, high, hash, maxDistance, result);
+    }
+
+    private void searchNearest(int low, int high, long[][] hashes, NearestQueue nearestQueue) {
+        if (high - low <= S_LEAF_SIZE) {
+            for (int i = low; i < high; i++) {
+                int maxDistance = nearestQueue.getMaxDistance();
+                int bestDistance = maxDistance + 1;
+                for (long[] hash : hashes) bestDistance = Math.min(bestDistance, mHashes.calcDistance(hash, i, maxDistance));
+                nearestQueue.offer(bestDistance, mIds[i]);
+            }
+            return;
+        }
+
+        // The distances of the vantage point to the nearest and the furthest orientation decide which halves can hold a near picture.
+        int threshold = mThresholds[low];
+        int minDistance = Hash1024b.BITS;
+        int maxDistance = 0;
+        for (long[] hash : hashes) {
+            int distance = mHashes.calcDistance(hash, low, Hash1024b.BITS);
+            minDistance = Math.min(minDistance, distance);
+            maxDistance = Math.max(maxDistance, distance);
+        }
+        nearestQueue.offer(minDistance, mIds[low]);
+
+        // The half the query is in is searched first, so the queue fills with near pictures early and more of the other half is skipped.
+        int middle = calcMiddle(low, high);
+        if (minDistance < threshold) {
+            if (minDistance - nearestQueue.getMaxDistance() <= threshold) searchNearest(low + 1, middle, hashes, nearestQueue);
+            if (maxDistance + nearestQueue.getMaxDistance() >= threshold) searchNearest(middle, high, hashes, nearestQueue);
+        } else {
+            if (maxDistance + nearestQueue.getMaxDistance() >= threshold) searchNearest(middle, high, hashes, nearestQueue);
+            if (minDistance - nearestQueue.getMaxDistance() <= threshold) searchNearest(low + 1, middle, hashes, nearestQueue);
+        }
+    }
+
+    /**
+     * Returns the first position of the outer half of the subtree from low up to high. The inner half starts right after the vantage point.
+     *
+     * @param low
+     * @param high
+     * @return
+     */
+    private static int calcMiddle(int low, int high) {
+        return low + 1 + (high - low - 1) / 2;
+    }
+
+    /**
+     * Builds the subtree from low up to high. The hash in the middle of the range becomes the vantage point, after which the other hashes are
+     * sorted by their distance to it. A counting sort is used, because a distance is never larger than 1024.
+     */
+    private class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int mLow;
+        private final int mHigh;
+
+        private BuildTask(int low, int high) {
+            mLow = low;
+            mHigh = high;
+        }
+
+        @Override
+        protected void compute() {
+            if (mHigh - mLow <= S_LEAF_SIZE) return;
+
+            swap(mLow, mLow + (mHigh - mLow) / 2);
+            long[] vantagePoint = mHashStore.getCanonicalHash1024b(mIds[mLow]);
+
+            int size = mHigh - mLow - 1;
+            int[] distances = new int[size];
+            int[] distanceCounts = new int[Hash1024b.BITS + 2];
+            for (int i = 0; i < size; i++) {
+                distances[i] = mHashStore.calcDistance(vantagePoint, mIds[mLow + 1 + i], Hash1024b.BITS);
+                distanceCounts[distances[i] + 1]++;
+            }
+            for (int i = 1; i < distanceCounts.length; i++) distanceCounts[i] += distanceCounts[i - 1];
+
+            int[] sortedIds = new int[size];
+            for (int i = 0; i < size; i++) sortedIds[distanceCounts[distances[i]]++] = mIds[mLow + 1 + i];
+            System.arraycopy(sortedIds, 0, mIds, mLow + 1, size);
+
+            int middle = calcMiddle(mLow, mHigh);
+            mThresholds[mLow] = mHashStore.calcDistance(vantagePoint, mIds[middle], Hash1024b.BITS);
+
+            BuildTask inner = new BuildTask(mLow + 1, middle);
+            BuildTask outer = new BuildTask(middle, mHigh);
+            if (size >= S_MIN_PARALLEL_BUILD_SIZE) invokeAll(inner, outer);
+            else {
+                inner.compute();
+                outer.compute();
+            }
+        }
+
+        private void swap(int a, int b) {
+            int id = mIds[a];
+            mIds[a] = mIds[b];
+            mIds[b] = id;
+        }
+    }
+
+    /**
+     * A priority queue of at most mCapacity pictures that keeps the nearest ones offered. It is a binary max-heap of entries with the distance in
+     * the upper half and the id in the lower half, so the furthest picture is at the root and is the one replaced by a nearer picture.
+     */
+    private static class NearestQueue {
+        private final int mCapacity;
+        private final long[] mEntries;
+        private int mSize;
+
+        private NearestQueue(int capacity) {
+            mCapacity = capacity;
+            mEntries = new long[capacity];
+        }
+
+        /**
+         * Returns the distance a picture may have at most to be added. Until the queue is full, any picture is added.
+         *
+         * @return
+         */
+        private int getMaxDistance() {
+            return mSize < mCapacity ? Hash1024b.BITS : (int) (mEntries[0] >>> 32);
+        }
+
+        private void offer(int distance, int id) {
+            long entry = ((long) distance << 32) | id;
+            if (mSize < mCapacity) {
+                int position = mSize++;
+                while (position > 0 && mEntries[(position - 1) / 2] < entry) { // Sifts up.
+                    mEntries[position] = mEntries[(position - 1) / 2];
+                    position = (position - 1) / 2;
+                }
+                mEntries[position] = entry;
+            } else if (entry < mEntries[0]) {
+                int position = 0;
+                while (true) { // Sifts down.
+                    int child = position * 2 + 1;
+                    if (child >= mSize) break;
+                    if (child + 1 < mSize && mEntries[child + 1] > mEntries[child]) child++;
+                    if (mEntries[child] <= entry) break;
+                    mEntries[position] = mEntries[child];
+                    position = child;
+                }
+                mEntries[position] = entry;
+            }
+        }
+
+        private long[] toSortedArray() {
+            long[] entries = Arrays.copyOf(mEntries, mSize);
+            Arrays.sort(entries);
+            return entries;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,29 @@
+/**
+ * Class that is a ProcessMonitor for tests, which keeps the processing activated and ignores all reports.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.util.List;
+
+class ActiveProcessMonitor implements ProcessMonitor {
+
+    @Override
+    public boolean isProcessingActivated() {
+        return true;
+    }
+
+    @Override
+    public void processingStarted() {}
+
+    @Override
+    public void updateStatus(String status) {}
+
+    @Override
+    public void showResults(List<List<PicData>> result, boolean containsExample, boolean complete) {}
+
+    @Override
+    public void processingFinished() {}
+}
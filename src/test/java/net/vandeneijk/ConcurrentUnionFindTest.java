@@ -0,0 +1,141 @@
+/**
+ * Class that tests ConcurrentUnionFind against a simple single threaded union-find, with the unions done by one thread and by many threads at
+ * once.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentUnionFindTest {
+
+    // Final class variables.
+    private static final int S_SIZE = 20000;
+    private static final int S_UNION_COUNT = 15000;
+    private static final int S_THREAD_COUNT = 8;
+
+
+
+    @Test
+    public void elementsStartInGroupsOfTheirOwn() {
+        ConcurrentUnionFind unionFind = new ConcurrentUnionFind(10);
+        for (int i = 0; i < 10; i++) assertEquals(i, unionFind.find(i));
+    }
+
+    @Test
+    public void rootIsSmallestElementOfGroup() {
+        ConcurrentUnionFind unionFind = new ConcurrentUnionFind(10);
+        unionFind.union(7, 3);
+        unionFind.union(9, 7);
+        unionFind.union(5, 9);
+        for (int element : new int[] {3, 5, 7, 9}) assertEquals(3, unionFind.find(element));
+        assertEquals(4, unionFind.find(4));
+
+        unionFind.union(9, 1);
+        for (int element : new int[] {1, 3, 5, 7, 9}) assertEquals(1, unionFind.find(element));
+    }
+
+    @Test
+    public void singleThreadMatchesReference() {
+        int[][] unions = createUnions(new Random(12));
+        ConcurrentUnionFind unionFind = new ConcurrentUnionFind(S_SIZE);
+        for (int[] union : unions) unionFind.union(union[0], union[1]);
+        assertSameGroups(createReferenceRoots(unions), unionFind);
+    }
+
+    @Test
+    public void concurrentUnionsMatchReference() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(S_THREAD_COUNT);
+        try {
+            for (int attempt = 0; attempt < 5; attempt++) {
+                int[][] unions = createUnions(new Random(attempt));
+                ConcurrentUnionFind unionFind = new ConcurrentUnionFind(S_SIZE);
+                CountDownLatch start = new CountDownLatch(1);
+
+                List<Future<?>> futures = new ArrayList<>();
+                for (int thread = 0; thread < S_THREAD_COUNT; thread++) {
+                    int firstUnion = thread;
+                    futures.add(executorService.submit(() -> {
+                        start.await();
+                        for (int i = firstUnion; i < unions.length; i += S_THREAD_COUNT) {
+                            unionFind.union(unions[i][0], unions[i][1]);
+                            unionFind.find(unions[(i * 31) % unions.length][1]); // Path halving of other threads while joining.
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) future.get();
+
+                assertSameGroups(createReferenceRoots(unions), unionFind);
+            }
+        } finally {
+            executorService.shutdownNow();
+            executorService.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    /**
+     * Returns random pairs of elements to join. Most pairs are near each other, so there are groups of many sizes instead of one giant group.
+     *
+     * @param random
+     * @return
+     */
+    private static int[][] createUnions(Random random) {
+        int[][] unions = new int[S_UNION_COUNT][];
+        for (int i = 0; i < unions.length; i++) {
+            int elementA = random.nextInt(S_SIZE);
+            int elementB = random.nextInt(10) == 0 ? random.nextInt(S_SIZE) : Math.min(S_SIZE - 1, elementA + random.nextInt(8));
+            unions[i] = new int[] {elementA, elementB};
+        }
+        return unions;
+    }
+
+    /**
+     * Returns the smallest element of the group of each element, found by a plain union-find without concurrency.
+     *
+     * @param unions
+     * @return
+     */
+    private static int[] createReferenceRoots(int[][] unions) {
+        int[] parents = new int[S_SIZE];
+        for (int i = 0; i < parents.length; i++) parents[i] = i;
+        for (int[] union : unions) {
+            int rootA = findReferenceRoot(parents, union[0]);
+            int rootB = findReferenceRoot(parents, union[1]);
+            parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+
+        int[] roots = new int[S_SIZE];
+        for (int i = 0; i < roots.length; i++) roots[i] = findReferenceRoot(parents, i);
+        return roots;
+    }
+
+    private static int findReferenceRoot(int[] parents, int element) {
+        while (parents[element] != element) element = parents[element];
+        return element;
+    }
+
+    private static void assertSameGroups(int[] referenceRoots, ConcurrentUnionFind unionFind) {
+        for (int element = 0; element < S_SIZE; element++) assertEquals("Element " + element, referenceRoots[element], unionFind.find(element));
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Class that tests ContentDigest against the reference implementation of MurmurHash3 x64 128, and checks that feeding the content in pieces
+ * gives the same digest as feeding it at once.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ContentDigestTest {
+
+    /**
+     * The verification value of SMHasher, the test suite of the author of MurmurHash3. The key of i bytes 0, 1, .. i - 1 is hashed with seed
+     * 256 - i for each i from 0 to 255. The 256 digests of 16 bytes each are hashed with seed 0, of which the first 4 bytes, little endian, are
+     * the verification value.
+     */
+    @Test
+    public void matchesSmHasherVerificationValue() {
+        ByteBuffer digests = ByteBuffer.allocate(256 * 16).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] key = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            key[i] = (byte) i;
+            ContentDigest contentDigest = new ContentDigest(256 - i);
+            contentDigest.update(ByteBuffer.wrap(key, 0, i));
+            long[] digest = contentDigest.finish();
+            digests.putLong(digest[0]).putLong(digest[1]);
+        }
+
+        long[] verification = ContentDigest.calcDigest(digests.array());
+        assertEquals(0x6384BA69, (int) verification[0]);
+    }
+
+    @Test
+    public void matchesReferenceVectors() {
+        assertArrayEquals(new long[] {0, 0}, ContentDigest.calcDigest(new byte[0]));
+        assertArrayEquals(new long[] {0xE34BBC7BBC071B6CL, 0x7A433CA9C49A9347L}, ContentDigest.calcDigest("The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void piecesGiveSameDigestAsWhole() {
+        byte[] bytes = new byte[1000];
+        new Random(1).nextBytes(bytes);
+        long[] expected = ContentDigest.calcDigest(bytes);
+
+        Random random = new Random(2);
+        for (int attempt = 0; attempt < 50; attempt++) {
+            ContentDigest contentDigest = new ContentDigest();
+            int position = 0;
+            while (position < bytes.length) {
+                int length = Math.min(random.nextInt(40), bytes.length - position);
+                contentDigest.update(ByteBuffer.wrap(bytes, position, length));
+                position += length;
+            }
+            assertArrayEquals(expected, contentDigest.finish());
+        }
+    }
+
+    @Test
+    public void differentContentGivesDifferentDigest() {
+        byte[] bytes = new byte[100];
+        long[] digest = ContentDigest.calcDigest(bytes);
+        bytes[99] = 1;
+        assertFalse(Arrays.equals(digest, ContentDigest.calcDigest(bytes)));
+    }
+}
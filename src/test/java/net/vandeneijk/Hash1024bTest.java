@@ -0,0 +1,121 @@
+/**
+ * Class that tests the rotation and the canonical hash of Hash1024b. The rotation of a hash is checked against hashing cell values that are
+ * rotated by CellGrid.rotateCellValues, which is how the orientation hashes of a picture are made.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Hash1024bTest {
+
+    @Test
+    public void rotateMatchesRotatedCellValues() {
+        Random random = new Random(13);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            long[] hash = TestHashes.createRandomHash(random);
+            assertArrayEquals(toHash(CellGrid.rotateCellValues(toCellValues(hash))), Hash1024b.rotate(hash));
+        }
+    }
+
+    @Test
+    public void rotateMovesSingleBit() {
+        long[] hash = new long[Hash1024b.WORDS];
+        hash[0] = 1L; // The cell in the top left corner.
+        int[] cellValues = toCellValues(Hash1024b.rotate(hash));
+        assertEquals(1, cellValues[CellGrid.CELLS_PER_AXIS - 1]); // The top right corner.
+        assertEquals(1, Hash1024b.calcAmountOfOnes(Hash1024b.rotate(hash)));
+    }
+
+    @Test
+    public void fourRotationsGiveOriginal() {
+        Random random = new Random(14);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            long[] hash = TestHashes.createRandomHash(random);
+            long[] rotated = hash;
+            for (int i = 0; i < 4; i++) rotated = Hash1024b.rotate(rotated);
+            assertArrayEquals(hash, rotated);
+        }
+    }
+
+    @Test
+    public void rotatingBothKeepsDistance() {
+        Random random = new Random(15);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            long[] hashA = TestHashes.createRandomHash(random);
+            long[] hashB = TestHashes.flipBits(hashA, random.nextInt(200), random);
+            int distance = Hash1024b.calcDistance(hashA, hashB, Hash1024b.BITS);
+            assertEquals(distance, Hash1024b.calcDistance(Hash1024b.rotate(hashA), Hash1024b.rotate(hashB), Hash1024b.BITS));
+        }
+    }
+
+    @Test
+    public void canonicalIsSameForEachOrientation() {
+        Random random = new Random(16);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            long[][] orientations = TestHashes.createOrientations(TestHashes.createRandomHash(random));
+            long[] canonical = orientations[Hash1024b.findCanonical(orientations)];
+            for (int rotation = 1; rotation < 4; rotation++) {
+                long[][] rotatedOrientations = TestHashes.createOrientations(orientations[rotation]);
+                assertArrayEquals(canonical, rotatedOrientations[Hash1024b.findCanonical(rotatedOrientations)]);
+            }
+        }
+    }
+
+    @Test
+    public void canonicalIsSmallestUnsigned() {
+        Random random = new Random(17);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            long[][] orientations = TestHashes.createOrientations(TestHashes.createRandomHash(random));
+            if (attempt % 2 == 0) { // Makes the first words equal, so a later word decides.
+                for (long[] orientation : orientations) orientation[0] = orientation[1] = -1L;
+            }
+            long[] canonical = orientations[Hash1024b.findCanonical(orientations)];
+            for (long[] orientation : orientations) assertTrue(compareUnsigned(canonical, orientation) <= 0);
+        }
+    }
+
+    @Test
+    public void calcDistanceExitsEarlyAboveMaxDistance() {
+        long[] hashA = new long[Hash1024b.WORDS];
+        long[] hashB = new long[Hash1024b.WORDS];
+        for (int i = 0; i < hashB.length; i++) hashB[i] = -1L;
+        assertEquals(Hash1024b.BITS, Hash1024b.calcDistance(hashA, hashB, Hash1024b.BITS));
+        int distance = Hash1024b.calcDistance(hashA, hashB, 10);
+        assertTrue(distance > 10 && distance < Hash1024b.BITS);
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    private static int[] toCellValues(long[] hash) {
+        int[] cellValues = new int[Hash1024b.BITS];
+        for (int i = 0; i < cellValues.length; i++) cellValues[i] = (int) (hash[i >>> 6] >>> (i & 63)) & 1;
+        return cellValues;
+    }
+
+    private static long[] toHash(int[] cellValues) {
+        long[] hash = new long[Hash1024b.WORDS];
+        for (int i = 0; i < cellValues.length; i++) {
+            if (cellValues[i] != 0) hash[i >>> 6] |= 1L << (i & 63);
+        }
+        return hash;
+    }
+
+    private static int compareUnsigned(long[] hashA, long[] hashB) {
+        for (int word = 0; word < Hash1024b.WORDS; word++) {
+            int comparison = Long.compareUnsigned(hashA[word], hashB[word]);
+            if (comparison != 0) return comparison;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Class that tests HashCache by storing pictures in a cache file and reading them back, through its path and its content, after reopening it.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HashCacheTest {
+
+    // Final class variables.
+    private static final long S_FILE_SIZE = 123456;
+    private static final long S_LAST_MODIFIED = 1500000000000L;
+
+    // Variables filled by method calls.
+    private Path mDirectory;
+    private Path mFile;
+
+
+
+    @Before
+    public void createDirectory() throws IOException {
+        mDirectory = Files.createTempDirectory("samepic-hashcache");
+        mFile = mDirectory.resolve("hashcache.bin");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        Files.deleteIfExists(mFile);
+        Files.delete(mDirectory);
+    }
+
+    @Test
+    public void pictureIsRestoredAfterReopening() {
+        Random random = new Random(21);
+        PicData stored = createPicData(1, TestHashes.createOrientations(TestHashes.createRandomHash(random)), random);
+        HashCache hashCache = HashCache.open(mFile);
+        hashCache.put(stored);
+        assertFalse(hashCache.restore(createPicData(1, null, null))); // Not on disk before close.
+        hashCache.close();
+
+        PicData restored = createPicData(1, null, null);
+        assertTrue(HashCache.open(mFile).restore(restored));
+        assertEquals(stored.getPictureWidth(), restored.getPictureWidth());
+        assertEquals(stored.getPictureHeight(), restored.getPictureHeight());
+        for (int orientation = 0; orientation < 4; orientation++) assertArrayEquals(stored.getHash1024b()[orientation], restored.getHash1024b()[orientation]);
+    }
+
+    @Test
+    public void changedPictureIsNotRestored() {
+        Random random = new Random(22);
+        HashCache hashCache = HashCache.open(mFile);
+        hashCache.put(createPicData(1, TestHashes.createOrientations(TestHashes.createRandomHash(random)), random));
+        hashCache.close();
+
+        HashCache reopened = HashCache.open(mFile);
+        PicData modified = createPicData(1, null, null);
+        modified.setPictureLastModified(S_LAST_MODIFIED + 1000);
+        assertFalse(reopened.restore(modified));
+        PicData resized = createPicData(1, null, null);
+        resized.setPictureFileSize(S_FILE_SIZE + 1);
+        assertFalse(reopened.restore(resized));
+        assertFalse(reopened.restore(createPicData(2, null, null)));
+        assertNull(modified.getHash1024b());
+    }
+
+    @Test
+    public void pictureIsRestoredByContentUnderAnotherPath() {
+        Random random = new Random(23);
+        PicData stored = createPicData(1, TestHashes.createOrientations(TestHashes.createRandomHash(random)), random);
+        HashCache hashCache = HashCache.open(mFile);
+        hashCache.put(stored);
+        hashCache.close();
+
+        HashCache reopened = HashCache.open(mFile);
+        PicData copy = createPicData(2, null, null);
+        copy.setContentDigest(stored.getContentDigest());
+        assertTrue(reopened.restoreByContent(copy));
+        assertArrayEquals(stored.getCanonicalHash1024b(), copy.getCanonicalHash1024b());
+
+        PicData otherContent = createPicData(3, null, null);
+        otherContent.setContentDigest(new long[] {stored.getContentDigest()[0], stored.getContentDigest()[1] + 1});
+        assertFalse(reopened.restoreByContent(otherContent));
+    }
+
+    @Test
+    public void recordsOfEarlierRunsAreKeptWhenAppending() {
+        Random random = new Random(24);
+        PicData first = createPicData(1, TestHashes.createOrientations(TestHashes.createRandomHash(random)), random);
+        HashCache hashCache = HashCache.open(mFile);
+        hashCache.put(first);
+        hashCache.close();
+
+        PicData second = createPicData(2, TestHashes.createOrientations(TestHashes.createRandomHash(random)), random);
+        PicData firstChanged = createPicData(1, TestHashes.createOrientations(TestHashes.createRandomHash(random)), random);
+        hashCache = HashCache.open(mFile);
+        hashCache.put(second);
+        hashCache.put(firstChanged); // A later record of the same path replaces the earlier one.
+        hashCache.close();
+
+        HashCache reopened = HashCache.open(mFile);
+        PicData restoredFirst = createPicData(1, null, null);
+        PicData restoredSecond = createPicData(2, null, null);
+        assertTrue(reopened.restore(restoredFirst));
+        assertTrue(reopened.restore(restoredSecond));
+        assertArrayEquals(firstChanged.getHash1024b()[0], restoredFirst.getHash1024b()[0]);
+        assertArrayEquals(second.getHash1024b()[0], restoredSecond.getHash1024b()[0]);
+    }
+
+    @Test
+    public void pictureWithoutHashesIsFoundWithoutHashes() {
+        Random random = new Random(25);
+        PicData notHashed = createPicData(1, null, random);
+        HashCache hashCache = HashCache.open(mFile);
+        hashCache.put(notHashed);
+        hashCache.close();
+
+        HashCache reopened = HashCache.open(mFile);
+        PicData restored = createPicData(1, null, null);
+        assertTrue(reopened.restore(restored));
+        assertNull(restored.getHash1024b());
+        PicData copy = createPicData(2, null, null);
+        copy.setContentDigest(notHashed.getContentDigest());
+        assertTrue(reopened.restoreByContent(copy));
+        assertNull(copy.getHash1024b());
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    /**
+     * Returns picture number with a fixed file size and last modified time. It gets orientations as hashes if they aren't null, and a random width,
+     * height and content digest if random isn't null.
+     *
+     * @param number
+     * @param orientations
+     * @param random
+     * @return
+     */
+    private static PicData createPicData(int number, long[][] orientations, Random random) {
+        PicData picData;
+        try {
+            picData = new PicData(Paths.get("picture" + number + ".jpg"), false, false);
+        } catch (MalformedURLException mfuEx) {
+            throw new IllegalStateException(mfuEx); // Can't happen, because a relative path is made absolute.
+        }
+        if (orientations != null) picData.setHash1024b(orientations);
+        picData.setPictureFileSize(S_FILE_SIZE);
+        picData.setPictureLastModified(S_LAST_MODIFIED);
+        if (random != null) {
+            picData.setPictureWidth(256 + random.nextInt(4000));
+            picData.setPictureHeight(256 + random.nextInt(4000));
+            picData.setContentDigest(new long[] {random.nextLong(), random.nextLong()});
+        }
+        return picData;
+    }
+}
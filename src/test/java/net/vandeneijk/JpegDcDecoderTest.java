@@ -0,0 +1,220 @@
+/**
+ * Class that tests JpegDcDecoder against a full decode by ImageIO, scaled down by averaging each 8x8 block. Each variant of JPEG file the decoder
+ * handles is written by ImageIO from the same picture.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class JpegDcDecoderTest {
+
+    // Final class variables.
+    private static final int S_WIDTH = 256;
+    private static final int S_HEIGHT = 176;
+    private static final double S_MAX_MEAN_LUMINOSITY_DIFFERENCE = 0.5; // On a scale of 0 to 255. The luminosity is what the hash is made from.
+    private static final double S_MAX_LUMINOSITY_DIFFERENCE = 2; // Clamping colors that are out of range changes the luminosity of a block a bit.
+    private static final int S_MAX_CHANNEL_DIFFERENCE = 24; // The color of a block comes from a chroma block of 16x16 pixels, so it differs more.
+
+
+
+    @Test
+    public void baselineMatchesImageIo() throws Exception {
+        assertMatchesImageIo(writeJpeg(createPicture(BufferedImage.TYPE_3BYTE_BGR), false, 0));
+    }
+
+    @Test
+    public void progressiveMatchesImageIo() throws Exception {
+        byte[] jpeg = writeJpeg(createPicture(BufferedImage.TYPE_3BYTE_BGR), true, 0);
+        assertTrue(containsMarker(jpeg, 0xC2));
+        assertMatchesImageIo(jpeg);
+    }
+
+    @Test
+    public void restartIntervalMatchesImageIo() throws Exception {
+        byte[] jpeg = writeJpeg(createPicture(BufferedImage.TYPE_3BYTE_BGR), false, 3);
+        assertTrue(containsMarker(jpeg, 0xDD));
+        assertMatchesImageIo(jpeg);
+    }
+
+    @Test
+    public void progressiveWithRestartIntervalMatchesImageIo() throws Exception {
+        assertMatchesImageIo(writeJpeg(createPicture(BufferedImage.TYPE_3BYTE_BGR), true, 5));
+    }
+
+    @Test
+    public void greyscaleMatchesImageIo() throws Exception {
+        assertMatchesImageIo(writeJpeg(createPicture(BufferedImage.TYPE_BYTE_GRAY), false, 0));
+    }
+
+    @Test
+    public void readHeaderGivesOriginalSize() throws Exception {
+        JpegDcDecoder jpegDcDecoder = new JpegDcDecoder(writeJpeg(createPicture(BufferedImage.TYPE_3BYTE_BGR), false, 0));
+        jpegDcDecoder.readHeader();
+        assertEquals(S_WIDTH, jpegDcDecoder.getWidth());
+        assertEquals(S_HEIGHT, jpegDcDecoder.getHeight());
+        assertEquals(S_WIDTH / 8, jpegDcDecoder.decode().getWidth());
+    }
+
+    @Test(expected = UnsupportedJpegException.class)
+    public void losslessFrameThrows() throws Exception {
+        byte[] jpeg = writeJpeg(createPicture(BufferedImage.TYPE_3BYTE_BGR), false, 0);
+        for (int i = 0; i < jpeg.length - 1; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == 0xC0) jpeg[i + 1] = (byte) 0xC3;
+        }
+        new JpegDcDecoder(jpeg).readHeader();
+    }
+
+    @Test(expected = UnsupportedJpegException.class)
+    public void damagedHeaderThrows() throws Exception {
+        byte[] jpeg = writeJpeg(createPicture(BufferedImage.TYPE_3BYTE_BGR), false, 0);
+        new JpegDcDecoder(Arrays.copyOf(jpeg, 40)).readHeader();
+    }
+
+    @Test
+    public void recognizesJpeg() throws Exception {
+        assertTrue(JpegDcDecoder.isJpeg(ByteBuffer.wrap(writeJpeg(createPicture(BufferedImage.TYPE_3BYTE_BGR), false, 0))));
+        assertFalse(JpegDcDecoder.isJpeg(ByteBuffer.wrap(new byte[] {(byte) 0x89, 'P', 'N', 'G'})));
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    private static void assertMatchesImageIo(byte[] jpeg) throws Exception {
+        JpegDcDecoder jpegDcDecoder = new JpegDcDecoder(jpeg);
+        jpegDcDecoder.readHeader();
+        BufferedImage decoded = jpegDcDecoder.decode();
+        BufferedImage reference = ImageIO.read(new ByteArrayInputStream(jpeg));
+
+        assertEquals(S_WIDTH / 8, decoded.getWidth());
+        assertEquals(S_HEIGHT / 8, decoded.getHeight());
+
+        double luminosityDifferenceSum = 0;
+        for (int y = 0; y < decoded.getHeight(); y++) {
+            for (int x = 0; x < decoded.getWidth(); x++) {
+                double[] average = getBlockAverage(reference, x * 8, y * 8);
+                int[] rgb = decoded.getRaster().getPixel(x, y, new int[3]);
+                for (int channel = 0; channel < 3; channel++) {
+                    double difference = Math.abs(rgb[channel] - average[channel]);
+                    assertTrue("Block " + x + "," + y + " channel " + channel + " differs " + difference, difference <= S_MAX_CHANNEL_DIFFERENCE);
+                }
+                double luminosityDifference = Math.abs(getLuminosity(rgb[0], rgb[1], rgb[2]) - getLuminosity(average[0], average[1], average[2]));
+                assertTrue("Block " + x + "," + y + " luminosity differs " + luminosityDifference, luminosityDifference <= S_MAX_LUMINOSITY_DIFFERENCE);
+                luminosityDifferenceSum += luminosityDifference;
+            }
+        }
+        double meanLuminosityDifference = luminosityDifferenceSum / (decoded.getWidth() * decoded.getHeight());
+        assertTrue("Mean luminosity differs " + meanLuminosityDifference, meanLuminosityDifference <= S_MAX_MEAN_LUMINOSITY_DIFFERENCE);
+    }
+
+    /**
+     * Returns the average red, green and blue of the 8x8 block at left and top. A greyscale picture has the same value for each. The raster is
+     * read directly, because getRGB converts grey values to another color space.
+     *
+     * @param picture
+     * @param left
+     * @param top
+     * @return
+     */
+    private static double[] getBlockAverage(BufferedImage picture, int left, int top) {
+        int bands = picture.getRaster().getNumBands();
+        double[] averages = new double[3];
+        for (int y = top; y < top + 8; y++) {
+            for (int x = left; x < left + 8; x++) {
+                int[] samples = picture.getRaster().getPixel(x, y, new int[bands]);
+                for (int channel = 0; channel < 3; channel++) averages[channel] += (bands == 1 ? samples[0] : samples[channel]) / 64.0;
+            }
+        }
+        return averages;
+    }
+
+    private static double getLuminosity(double red, double green, double blue) {
+        return 0.299 * red + 0.587 * green + 0.114 * blue;
+    }
+
+    /**
+     * Creates a picture with smooth gradients and a few hard edges, so both the DC and AC coefficients matter.
+     *
+     * @param type
+     * @return
+     */
+    private static BufferedImage createPicture(int type) {
+        BufferedImage picture = new BufferedImage(S_WIDTH, S_HEIGHT, type);
+        for (int y = 0; y < S_HEIGHT; y++) {
+            for (int x = 0; x < S_WIDTH; x++) {
+                int red = x * 255 / S_WIDTH;
+                int green = y * 255 / S_HEIGHT;
+                int blue = ((x / 32 + y / 32) % 2 == 0) ? 200 : 40;
+                picture.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        return picture;
+    }
+
+    /**
+     * Writes picture as JPEG file. A restartInterval of 0 writes no restart markers.
+     *
+     * @param picture
+     * @param progressive
+     * @param restartInterval
+     * @return
+     * @throws IOException
+     */
+    private static byte[] writeJpeg(BufferedImage picture, boolean progressive, int restartInterval) throws IOException {
+        ImageWriter imageWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam imageWriteParam = imageWriter.getDefaultWriteParam();
+        imageWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        imageWriteParam.setCompressionQuality(0.9f);
+        if (progressive) imageWriteParam.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+
+        IIOMetadata metadata = imageWriter.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(picture), imageWriteParam);
+        if (restartInterval > 0) {
+            String formatName = "javax_imageio_jpeg_image_1.0";
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(formatName);
+            Node markerSequence = root.getElementsByTagName("markerSequence").item(0);
+            IIOMetadataNode dri = new IIOMetadataNode("dri");
+            dri.setAttribute("interval", String.valueOf(restartInterval));
+            markerSequence.insertBefore(dri, markerSequence.getFirstChild());
+            metadata.setFromTree(formatName, root);
+        }
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(byteArrayOutputStream)) {
+            imageWriter.setOutput(imageOutputStream);
+            imageWriter.write(null, new IIOImage(picture, null, metadata), imageWriteParam);
+        } finally {
+            imageWriter.dispose();
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static boolean containsMarker(byte[] jpeg, int marker) {
+        for (int i = 0; i < jpeg.length - 1; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == marker) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Class that tests the kernels LuminosityKernel selects, by comparing each of them against the kernel based on BufferedImage.getRGB for every
+ * raster layout forPicture recognizes, including banded rasters and sub pictures.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import org.junit.Test;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LuminosityKernelTest {
+
+    // Final class variables.
+    private static final int S_WIDTH = 37;
+    private static final int S_HEIGHT = 23;
+
+
+
+    @Test
+    public void byteRgbMatchesGeneric() {
+        assertMatchesGeneric(createRandomPicture(BufferedImage.TYPE_3BYTE_BGR), "ByteRgbKernel");
+        assertMatchesGeneric(createRandomPicture(BufferedImage.TYPE_4BYTE_ABGR), "ByteRgbKernel");
+    }
+
+    @Test
+    public void bandedByteRgbMatchesGeneric() {
+        assertMatchesGeneric(createBandedRgbPicture(new int[] {0, 1, 2}, new int[] {0, 0, 0}), "ByteRgbKernel");
+        assertMatchesGeneric(createBandedRgbPicture(new int[] {2, 0, 1}, new int[] {3, 1, 2}), "ByteRgbKernel");
+    }
+
+    @Test
+    public void intRgbMatchesGeneric() {
+        assertMatchesGeneric(createRandomPicture(BufferedImage.TYPE_INT_RGB), "IntRgbKernel");
+        assertMatchesGeneric(createRandomPicture(BufferedImage.TYPE_INT_ARGB), "IntRgbKernel");
+        assertMatchesGeneric(createRandomPicture(BufferedImage.TYPE_INT_BGR), "IntRgbKernel");
+    }
+
+    @Test
+    public void indexMatchesGeneric() {
+        assertMatchesGeneric(createRandomPicture(BufferedImage.TYPE_BYTE_INDEXED), "ByteIndexKernel");
+        assertMatchesGeneric(createRandomPicture(BufferedImage.TYPE_BYTE_BINARY), "PackedIndexKernel");
+        assertMatchesGeneric(createPackedIndexPicture(2), "PackedIndexKernel");
+        assertMatchesGeneric(createPackedIndexPicture(4), "PackedIndexKernel");
+    }
+
+    @Test
+    public void greyMatchesSamples() {
+        assertMatchesSamples(createRandomPicture(BufferedImage.TYPE_BYTE_GRAY), "ByteGreyKernel", 0);
+        assertMatchesSamples(createRandomPicture(BufferedImage.TYPE_USHORT_GRAY), "UShortGreyKernel", 8);
+        assertMatchesSamples(createBandedGreyPicture(), "ByteGreyKernel", 0);
+    }
+
+    @Test
+    public void otherLayoutsUseGeneric() {
+        assertEquals("GenericKernel", LuminosityKernel.forPicture(createRandomPicture(BufferedImage.TYPE_USHORT_565_RGB)).getClass().getSimpleName());
+        assertEquals("GenericKernel", LuminosityKernel.forPicture(createRandomPicture(BufferedImage.TYPE_USHORT_555_RGB)).getClass().getSimpleName());
+        assertEquals("GenericKernel", LuminosityKernel.forPicture(createRandomPicture(BufferedImage.TYPE_4BYTE_ABGR_PRE)).getClass().getSimpleName());
+        assertEquals("GenericKernel", LuminosityKernel.forPicture(createRandomPicture(BufferedImage.TYPE_INT_ARGB_PRE)).getClass().getSimpleName());
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    /**
+     * Checks that forPicture selects kernelName for bufferedImage and for a sub picture of it, and that the kernel reads the same rows as the
+     * generic kernel.
+     */
+    private static void assertMatchesGeneric(BufferedImage bufferedImage, String kernelName) {
+        for (BufferedImage picture : new BufferedImage[] {bufferedImage, createSubPicture(bufferedImage)}) {
+            LuminosityKernel kernel = LuminosityKernel.forPicture(picture);
+            assertEquals(kernelName, kernel.getClass().getSimpleName());
+            LuminosityKernel genericKernel = new LuminosityKernel.GenericKernel(picture);
+            int[] row = new int[picture.getWidth()];
+            int[] expectedRow = new int[picture.getWidth()];
+            for (int y = 0; y < picture.getHeight(); y++) {
+                kernel.readRow(y, row);
+                genericKernel.readRow(y, expectedRow);
+                assertArrayEquals("Row " + y, expectedRow, row);
+            }
+        }
+    }
+
+    /**
+     * Checks the grey kernels against the samples of the raster. BufferedImage.getRGB converts the linear grey color space to sRGB, so the
+     * generic kernel gives other values for grey pictures.
+     */
+    private static void assertMatchesSamples(BufferedImage bufferedImage, String kernelName, int sampleShift) {
+        for (BufferedImage picture : new BufferedImage[] {bufferedImage, createSubPicture(bufferedImage)}) {
+            LuminosityKernel kernel = LuminosityKernel.forPicture(picture);
+            assertEquals(kernelName, kernel.getClass().getSimpleName());
+            Raster raster = picture.getRaster();
+            int[] row = new int[picture.getWidth()];
+            for (int y = 0; y < picture.getHeight(); y++) {
+                kernel.readRow(y, row);
+                for (int x = 0; x < picture.getWidth(); x++) {
+                    int grey = raster.getSample(raster.getMinX() + x, raster.getMinY() + y, 0) >>> sampleShift;
+                    assertEquals("Pixel " + x + ", " + y, LuminosityKernel.calcLuminosity(grey, grey, grey), row[x]);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage createRandomPicture(int type) {
+        BufferedImage bufferedImage = new BufferedImage(S_WIDTH, S_HEIGHT, type);
+        fillRandom(bufferedImage.getRaster(), type);
+        return bufferedImage;
+    }
+
+    private static BufferedImage createBandedRgbPicture(int[] bankIndices, int[] bandOffsets) {
+        WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, S_WIDTH, S_HEIGHT, S_WIDTH + 5, bankIndices, bandOffsets, null);
+        ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        fillRandom(raster, bankIndices.length);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private static BufferedImage createBandedGreyPicture() {
+        WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, S_WIDTH, S_HEIGHT, S_WIDTH, new int[] {1}, new int[] {4}, null);
+        ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY), false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        fillRandom(raster, 1);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private static BufferedImage createPackedIndexPicture(int bitsPerPixel) {
+        int mapSize = 1 << bitsPerPixel;
+        byte[] red = new byte[mapSize];
+        byte[] green = new byte[mapSize];
+        byte[] blue = new byte[mapSize];
+        new Random(bitsPerPixel).nextBytes(red);
+        new Random(bitsPerPixel + 1).nextBytes(green);
+        new Random(bitsPerPixel + 2).nextBytes(blue);
+        BufferedImage bufferedImage = new BufferedImage(S_WIDTH, S_HEIGHT, BufferedImage.TYPE_BYTE_BINARY, new IndexColorModel(bitsPerPixel, mapSize, red, green, blue));
+        fillRandom(bufferedImage.getRaster(), bitsPerPixel);
+        return bufferedImage;
+    }
+
+    /**
+     * Returns a part of bufferedImage that doesn't start at the first pixel, so the kernels have to honour the translation of the raster.
+     */
+    private static BufferedImage createSubPicture(BufferedImage bufferedImage) {
+        return bufferedImage.getSubimage(3, 5, bufferedImage.getWidth() - 7, bufferedImage.getHeight() - 9);
+    }
+
+    private static void fillRandom(WritableRaster raster, long seed) {
+        Random random = new Random(seed);
+        int[] sampleSizes = raster.getSampleModel().getSampleSize();
+        for (int y = 0; y < raster.getHeight(); y++) {
+            for (int x = 0; x < raster.getWidth(); x++) {
+                for (int band = 0; band < raster.getNumBands(); band++) {
+                    raster.setSample(x, y, band, random.nextInt(1 << sampleSizes[band]));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Class that tests MultiIndexHashIndex against a brute force scan, which compares each query against every picture in the HashStore, for
+ * several maximum distances the index is created for.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class MultiIndexHashIndexTest {
+
+    // Final class variables.
+    private static final int S_CLUSTER_COUNT = 200;
+    private static final int S_CLUSTER_SIZE = 16;
+    private static final int S_MAX_FLIPPED_BITS = 60;
+    private static final int S_QUERY_COUNT = 40;
+
+    // Variables filled by setUp.
+    private static HashStore sHashStore;
+    private static long[][][] sQueries;
+
+
+
+    @BeforeClass
+    public static void setUp() {
+        Random random = new Random(10);
+        sHashStore = TestHashes.createHashStore(S_CLUSTER_COUNT, S_CLUSTER_SIZE, S_MAX_FLIPPED_BITS, random);
+
+        sQueries = new long[S_QUERY_COUNT][][];
+        for (int i = 0; i < sQueries.length; i++) {
+            long[] hash = i % 4 == 3 ? TestHashes.createRandomHash(random) : sHashStore.getCanonicalHash1024b(random.nextInt(sHashStore.size()));
+            sQueries[i] = TestHashes.createOrientations(Hash1024b.rotate(TestHashes.flipBits(hash, random.nextInt(20), random)));
+        }
+    }
+
+
+
+    @Test
+    public void findWithinDistanceMatchesBruteForce() {
+        for (int indexMaxDistance : new int[] {0, 1, 10, 48}) {
+            MultiIndexHashIndex multiIndexHashIndex = new MultiIndexHashIndex(sHashStore, indexMaxDistance);
+            for (int maxDistance = 0; maxDistance <= indexMaxDistance; maxDistance += Math.max(1, indexMaxDistance / 4)) {
+                for (long[][] query : sQueries) {
+                    TreeSet<Integer> found = new TreeSet<>();
+                    multiIndexHashIndex.findWithinDistance(query, maxDistance, found::add);
+                    assertEquals("index " + indexMaxDistance + ", maxDistance " + maxDistance, TestHashes.findWithinDistance(sHashStore, query, maxDistance), found);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void exactLookupNeedsCanonicalHashOnly() {
+        MultiIndexHashIndex multiIndexHashIndex = new MultiIndexHashIndex(sHashStore, 0);
+        for (int id = 0; id < sHashStore.size(); id += 97) {
+            TreeSet<Integer> found = new TreeSet<>();
+            multiIndexHashIndex.findWithinDistance(new long[][] {sHashStore.getCanonicalHash1024b(id)}, 0, found::add);
+            assertTrue(found.contains(id));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLargerDistanceThanIndexed() {
+        new MultiIndexHashIndex(sHashStore, 4).findWithinDistance(sQueries[0], 5, id -> {});
+    }
+
+    @Test
+    public void tableBytesDoNotOverflow() {
+        assertEquals(8L * sHashStore.size(), MultiIndexHashIndex.calcTableBytes(sHashStore.size(), 0));
+        assertEquals(49L * 8 * 20_000_000, MultiIndexHashIndex.calcTableBytes(20_000_000, 48));
+    }
+}
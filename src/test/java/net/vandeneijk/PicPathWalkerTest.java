@@ -0,0 +1,122 @@
+/**
+ * Class that tests PicPathWalker on a directory tree with a loop of symbolic links, and its comparison of directories without file keys.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class PicPathWalkerTest {
+
+    // Variables filled by method calls.
+    private Path mRoot;
+
+
+
+    @Before
+    public void createRoot() throws IOException {
+        mRoot = Files.createTempDirectory("samepic-walker").toRealPath();
+    }
+
+    @After
+    public void deleteRoot() throws IOException {
+        Files.walkFileTree(mRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException ioEx) throws IOException {
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void symbolicLinkLoopIsNotDescended() throws Exception {
+        Path a = Files.createDirectories(mRoot.resolve("a"));
+        Path b = Files.createDirectories(a.resolve("b"));
+        Path c = Files.createDirectories(mRoot.resolve("c"));
+        Files.createFile(a.resolve("one.jpg"));
+        Files.createFile(b.resolve("two.png"));
+        Files.createFile(b.resolve("notes.txt"));
+        Files.createFile(c.resolve("three.bmp"));
+        assumeTrue(tryCreateSymbolicLink(b.resolve("loop"), a));
+        assumeTrue(tryCreateSymbolicLink(a.resolve("linkToC"), c));
+
+        List<Path> found = walk(true);
+
+        List<Path> expected = new ArrayList<>();
+        expected.add(a.resolve("one.jpg"));
+        expected.add(b.resolve("two.png"));
+        expected.add(a.resolve("linkToC").resolve("three.bmp"));
+        expected.add(c.resolve("three.bmp"));
+        Collections.sort(expected);
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void directoryWithPictureExtensionIsNotPassedOn() throws Exception {
+        Files.createDirectories(mRoot.resolve("holiday.jpg"));
+        Files.createFile(mRoot.resolve("holiday.jpg").resolve("beach.jpg"));
+
+        assertEquals(Collections.emptyList(), walk(false));
+        assertEquals(Collections.singletonList(mRoot.resolve("holiday.jpg").resolve("beach.jpg")), walk(true));
+    }
+
+    @Test
+    public void directoriesWithoutFileKeysAreComparedByPath() throws Exception {
+        Path a = Files.createDirectories(mRoot.resolve("a"));
+        Path b = Files.createDirectories(mRoot.resolve("b"));
+        assumeTrue(tryCreateSymbolicLink(b.resolve("linkToA"), a));
+
+        assertTrue(PicPathWalker.isSameDirectory(a, null, b.resolve("linkToA"), null));
+        assertTrue(PicPathWalker.isSameDirectory(a, "key", b.resolve("linkToA"), null));
+        assertFalse(PicPathWalker.isSameDirectory(a, null, b, null));
+        assertFalse(PicPathWalker.isSameDirectory(a, null, mRoot.resolve("missing"), null));
+        assertFalse(PicPathWalker.isSameDirectory(a, "key", a, "otherKey"));
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    private List<Path> walk(boolean traversePath) throws ProcessingAbortedException {
+        List<Path> found = Collections.synchronizedList(new ArrayList<>());
+        new PicPathWalker(traversePath, new ActiveProcessMonitor(), (path, attributes) -> found.add(path)).walk(mRoot);
+        List<Path> sorted = new ArrayList<>(found);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static boolean tryCreateSymbolicLink(Path link, Path target) {
+        try {
+            Files.createSymbolicLink(link, target);
+            return true;
+        } catch (IOException | UnsupportedOperationException miscEx) {
+            return false; // May be ignored. Creating links may need rights the test doesn't have, the test is skipped then.
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Class that tests the matching of search pictures against example pictures by PicsProcessor while the search pictures are added.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PicsProcessorTest {
+
+    // Final class variables.
+    private static final int S_ALLOWED_DEVIATION = 40;
+
+
+
+    @Test
+    public void searchPictureMatchingTwoExamplePicturesHasAccuracyOfEachMatch() {
+        Random random = new Random(11);
+        long[] firstExampleHash = TestHashes.createRandomHash(random);
+        long[] secondExampleHash = TestHashes.flipBits(firstExampleHash, 20, random);
+        long[] searchHash = TestHashes.flipBits(firstExampleHash, 6, random);
+        int firstDistance = Hash1024b.calcDistance(firstExampleHash, searchHash, Hash1024b.BITS);
+        int secondDistance = Hash1024b.calcDistance(secondExampleHash, searchHash, Hash1024b.BITS);
+        assertNotEquals(firstDistance, secondDistance);
+        assertTrue(secondDistance <= S_ALLOWED_DEVIATION);
+
+        PicsProcessor picsProcessor = new PicsProcessor(new ActiveProcessMonitor());
+        picsProcessor.addFinishedHashing(createPicData(1, firstExampleHash, true));
+        picsProcessor.addFinishedHashing(createPicData(2, secondExampleHash, true));
+        picsProcessor.startMatchingFromExample(S_ALLOWED_DEVIATION);
+        picsProcessor.addFinishedHashing(createPicData(3, searchHash, false));
+
+        for (int i = 0; i < 2; i++) { // The accuracies may not change from one result to the next.
+            List<List<PicData>> result = picsProcessor.getSamePicResultsFromExampleSoFar();
+            assertEquals(2, result.size());
+            assertGroup(result.get(0), "picture1.jpg", firstDistance);
+            assertGroup(result.get(1), "picture2.jpg", secondDistance);
+            assertNotSame(result.get(0).get(1), result.get(1).get(1));
+        }
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    private static PicData createPicData(int number, long[] hash, boolean examplePicture) {
+        try {
+            PicData picData = new PicData(Paths.get("picture" + number + ".jpg"), examplePicture, false);
+            picData.setHash1024b(TestHashes.createOrientations(hash));
+            return picData;
+        } catch (MalformedURLException mfuEx) {
+            throw new IllegalStateException(mfuEx); // Can't happen, because a relative path is made absolute.
+        }
+    }
+
+    private static void assertGroup(List<PicData> group, String examplePicture, int distance) {
+        assertEquals(2, group.size());
+        assertTrue(group.get(0).getPath().endsWith(examplePicture));
+        assertEquals(100.0, group.get(0).getAccuracy(), 0.0);
+        assertTrue(group.get(1).getPath().endsWith("picture3.jpg"));
+        assertEquals((100.0 / 1024) * (1024 - distance), group.get(1).getAccuracy(), 1e-9);
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Class with helper methods that create hashes and HashStores for the tests of the hash indexes. The hashes come in clusters of near hashes, so
+ * the queries of a test find more than a few pictures.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import java.net.MalformedURLException;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.TreeSet;
+
+final class TestHashes {
+
+    private TestHashes() {}
+
+
+
+    static long[] createRandomHash(Random random) {
+        long[] hash = new long[Hash1024b.WORDS];
+        for (int i = 0; i < hash.length; i++) hash[i] = random.nextLong();
+        return hash;
+    }
+
+    /**
+     * Returns a copy of hash with amount different bits flipped.
+     *
+     * @param hash
+     * @param amount
+     * @param random
+     * @return
+     */
+    static long[] flipBits(long[] hash, int amount, Random random) {
+        long[] result = hash.clone();
+        int flipped = 0;
+        while (flipped < amount) {
+            int bit = random.nextInt(Hash1024b.BITS);
+            if (((result[bit >>> 6] ^ hash[bit >>> 6]) & (1L << (bit & 63))) != 0) continue; // Already flipped.
+            result[bit >>> 6] ^= 1L << (bit & 63);
+            flipped++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the 4 orientation hashes of hash, with hash first and each next one rotated by another 90 degrees, the same as a PicData holds them.
+     *
+     * @param hash
+     * @return
+     */
+    static long[][] createOrientations(long[] hash) {
+        long[][] hashes = new long[4][];
+        hashes[0] = hash;
+        for (int orientation = 1; orientation < hashes.length; orientation++) hashes[orientation] = Hash1024b.rotate(hashes[orientation - 1]);
+        return hashes;
+    }
+
+    /**
+     * Returns a sorted HashStore with clusterCount clusters of clusterSize hashes each. Each hash of a cluster differs from the hash the cluster
+     * started with in at most maxFlippedBits bits, and is rotated by a random amount of 90 degrees.
+     *
+     * @param clusterCount
+     * @param clusterSize
+     * @param maxFlippedBits
+     * @param random
+     * @return
+     */
+    static HashStore createHashStore(int clusterCount, int clusterSize, int maxFlippedBits, Random random) {
+        HashStore hashStore = new HashStore();
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            long[] clusterHash = createRandomHash(random);
+            for (int i = 0; i < clusterSize; i++) {
+                long[][] orientations = createOrientations(flipBits(clusterHash, random.nextInt(maxFlippedBits + 1), random));
+                hashStore.add(createPicData(cluster * clusterSize + i, createOrientations(orientations[random.nextInt(4)])));
+            }
+        }
+        hashStore.sort();
+        return hashStore;
+    }
+
+    static PicData createPicData(int number, long[][] orientations) {
+        try {
+            PicData picData = new PicData(Paths.get("picture" + number + ".jpg"), false, false);
+            picData.setHash1024b(orientations);
+            return picData;
+        } catch (MalformedURLException mfuEx) {
+            throw new IllegalStateException(mfuEx); // Can't happen, because a relative path is made absolute.
+        }
+    }
+
+    /**
+     * Returns the distance of the nearest of the orientation hashes to hash, without exiting early.
+     *
+     * @param orientations
+     * @param hash
+     * @return
+     */
+    static int calcBestDistance(long[][] orientations, long[] hash) {
+        int bestDistance = Hash1024b.BITS;
+        for (long[] orientation : orientations) bestDistance = Math.min(bestDistance, Hash1024b.calcDistance(orientation, hash, Hash1024b.BITS));
+        return bestDistance;
+    }
+
+    /**
+     * Returns the ids of the pictures in hashStore within maxDistance of one of the query hashes, by comparing the query against every picture.
+     *
+     * @param hashStore
+     * @param query
+     * @param maxDistance
+     * @return
+     */
+    static TreeSet<Integer> findWithinDistance(HashStore hashStore, long[][] query, int maxDistance) {
+        TreeSet<Integer> found = new TreeSet<>();
+        for (int id = 0; id < hashStore.size(); id++) {
+            if (calcBestDistance(query, hashStore.getCanonicalHash1024b(id)) <= maxDistance) found.add(id);
+        }
+        return found;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Class that tests VpTreeHashIndex against a brute force scan, which compares each query against every picture in the HashStore. The store is
+ * large enough for the tree to be built in parallel.
+ *
+ * @author Robert van den Eijk
+ */
+
+package net.vandeneijk;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class VpTreeHashIndexTest {
+
+    // Final class variables.
+    private static final int S_CLUSTER_COUNT = 250;
+    private static final int S_CLUSTER_SIZE = 24;
+    private static final int S_MAX_FLIPPED_BITS = 80;
+    private static final int S_QUERY_COUNT = 40;
+
+    // Variables filled by setUp.
+    private static HashStore sHashStore;
+    private static VpTreeHashIndex sVpTreeHashIndex;
+    private static long[][][] sQueries;
+
+
+
+    @BeforeClass
+    public static void setUp() {
+        Random random = new Random(9);
+        sHashStore = TestHashes.createHashStore(S_CLUSTER_COUNT, S_CLUSTER_SIZE, S_MAX_FLIPPED_BITS, random);
+        sVpTreeHashIndex = new VpTreeHashIndex(sHashStore);
+
+        sQueries = new long[S_QUERY_COUNT][][];
+        for (int i = 0; i < sQueries.length; i++) {
+            long[] hash = i % 4 == 3 ? TestHashes.createRandomHash(random) : sHashStore.getCanonicalHash1024b(random.nextInt(sHashStore.size()));
+            sQueries[i] = TestHashes.createOrientations(Hash1024b.rotate(TestHashes.flipBits(hash, random.nextInt(20), random)));
+        }
+    }
+
+
+
+    @Test
+    public void findWithinDistanceMatchesBruteForce() {
+        for (int maxDistance : new int[] {0, 1, 10, 48, 100, 300, Hash1024b.BITS}) {
+            for (long[][] query : sQueries) {
+                TreeSet<Integer> found = new TreeSet<>();
+                sVpTreeHashIndex.findWithinDistance(query, maxDistance, found::add);
+                assertEquals("maxDistance " + maxDistance, TestHashes.findWithinDistance(sHashStore, query, maxDistance), found);
+            }
+        }
+    }
+
+    @Test
+    public void findsExactCopy() {
+        int id = sHashStore.size() / 2;
+        TreeSet<Integer> found = new TreeSet<>();
+        sVpTreeHashIndex.findWithinDistance(new long[][] {sHashStore.getCanonicalHash1024b(id)}, 0, found::add);
+        assertTrue(found.contains(id));
+    }
+
+    @Test
+    public void findNearestMatchesBruteForce() {
+        for (int amount : new int[] {0, 1, 5, S_CLUSTER_SIZE * 2, 1000}) {
+            for (long[][] query : sQueries) {
+                long[] nearest = sVpTreeHashIndex.findNearest(query, amount);
+                assertArrayEquals("amount " + amount, findNearestBruteForce(query, amount), nearest);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void findNearestRejectsNegativeAmount() {
+        sVpTreeHashIndex.findNearest(sQueries[0], -1);
+    }
+
+    @Test
+    public void findNearestReturnsAllWhenAmountExceedsSize() {
+        assertEquals(sHashStore.size(), sVpTreeHashIndex.findNearest(sQueries[0], sHashStore.size() + 10).length);
+    }
+
+
+
+    // ========================================================================
+    // ========================================================================
+    // Helper methods.
+
+    /**
+     * Returns the entries findNearest should return: the distance in the upper half and the id in the lower half, nearest first.
+     *
+     * @param query
+     * @param amount
+     * @return
+     */
+    private static long[] findNearestBruteForce(long[][] query, int amount) {
+        long[] entries = new long[sHashStore.size()];
+        for (int id = 0; id < entries.length; id++) entries[id] = ((long) TestHashes.calcBestDistance(query, sHashStore.getCanonicalHash1024b(id)) << 32) | id;
+        Arrays.sort(entries);
+        return Arrays.copyOf(entries, Math.min(amount, entries.length));
+    }
+}